@@ -0,0 +1,394 @@
+package environments;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.Observation;
+import world.Observation.GameObject;
+
+/**
+ * A compact binary encoding of {@link Observation}, as an alternative to json.
+ * See also {@link LabRecruitsConfig.WireFormat}.
+ *
+ * An encoded observation starts with a string table holding every distinct
+ * string in the observation (object names, tags, ids, ...); the rest of the
+ * encoding refers to strings by their index in this table. Integers are
+ * written as varints, floats as 4-byte IEEE values, and optional parts are
+ * marked by presence bits.
+ */
+public class BinaryObservationCodec {
+
+    // presence bits of an observation:
+    private static final int HAS_AGENT = 1, HAS_META = 2, HAS_OBJECTS = 4, HAS_NAVINDICES = 8,
+            IS_DELTA = 16, HAS_REMOVED = 32;
+
+    // presence bits of a game object:
+    private static final int HAS_COLLIDERS = 1, HAS_TRANSFORM = 2, HAS_INTERACTABLE = 4, HAS_COLORIZED = 8,
+            HAS_COLORSCREEN = 16, HAS_TOGGLEABLE = 32, HAS_FIREHAZARD = 64;
+
+    // ========================================================================
+    // Encoding
+    // ========================================================================
+
+    /**
+     * Encode the given observation, and return the resulting bytes.
+     */
+    public static byte[] encode(Observation obs) {
+        Output body = new Output(256 + (obs.objects == null ? 0 : 64 * obs.objects.length));
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+
+        int flags = (obs.agent != null ? HAS_AGENT : 0) | (obs.meta != null ? HAS_META : 0)
+                | (obs.objects != null ? HAS_OBJECTS : 0) | (obs.navMeshIndices != null ? HAS_NAVINDICES : 0)
+                | (obs.delta ? IS_DELTA : 0) | (obs.removed != null ? HAS_REMOVED : 0);
+        body.varint(flags);
+        if (obs.agent != null) {
+            Observation.Agent agent = obs.agent;
+            body.string(agent.id, strings, table);
+            body.vec3(agent.position);
+            body.vec3(agent.velocity);
+            body.bool(agent.didNothing);
+            body.zigzag(agent.health);
+            body.zigzag(agent.score);
+            body.string(agent.mood, strings, table);
+        }
+        if (obs.meta != null) {
+            body.nullableInt(obs.meta.tick);
+            body.string(obs.meta.time, strings, table);
+        }
+        if (obs.objects != null) {
+            body.varint(obs.objects.length);
+            for (GameObject obj : obs.objects)
+                encodeGameObject(body, obj, strings, table);
+        }
+        if (obs.navMeshIndices != null) {
+            // the indices are mostly ascending, so their deltas are small:
+            body.varint(obs.navMeshIndices.length);
+            int previous = 0;
+            for (int i : obs.navMeshIndices) {
+                body.zigzag(i - previous);
+                previous = i;
+            }
+        }
+        if (obs.removed != null) {
+            body.varint(obs.removed.length);
+            for (String id : obs.removed)
+                body.string(id, strings, table);
+        }
+
+        Output out = new Output(body.length + 16 * table.size() + 8);
+        out.varint(table.size());
+        for (String s : table) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.varint(bytes.length);
+            out.bytes(bytes, 0, bytes.length);
+        }
+        out.bytes(body.buffer, 0, body.length);
+        return out.toByteArray();
+    }
+
+    private static void encodeGameObject(Output out, GameObject obj, Map<String, Integer> strings, List<String> table) {
+        if (obj == null) {
+            // bit 7 marks a null object
+            out.varint(128);
+            return;
+        }
+        int flags = (obj.colliders != null ? HAS_COLLIDERS : 0) | (obj.transform != null ? HAS_TRANSFORM : 0)
+                | (obj.Interactable != null ? HAS_INTERACTABLE : 0) | (obj.Colorized != null ? HAS_COLORIZED : 0)
+                | (obj.ColorScreen != null ? HAS_COLORSCREEN : 0) | (obj.Toggleable != null ? HAS_TOGGLEABLE : 0)
+                | (obj.FireHazard != null ? HAS_FIREHAZARD : 0);
+        out.varint(flags);
+        out.string(obj.name, strings, table);
+        out.string(obj.tag, strings, table);
+        out.string(obj.id, strings, table);
+        if (obj.colliders != null) {
+            out.varint(obj.colliders.length);
+            for (GameObject.Collider c : obj.colliders) {
+                out.bool(c == null ? null : true);
+                if (c != null) {
+                    out.vec3(c.center);
+                    out.vec3(c.size);
+                }
+            }
+        }
+        if (obj.transform != null) {
+            out.vec3(obj.transform.position);
+            out.vec3(obj.transform.rotation);
+            out.vec3(obj.transform.velocity);
+        }
+        if (obj.Interactable != null) {
+            out.bool(obj.Interactable.interactable);
+            out.nullableFloat(obj.Interactable.interactionCooldown);
+            out.nullableFloat(obj.Interactable.timeSinceInteraction);
+        }
+        if (obj.Colorized != null)
+            out.color(obj.Colorized.color);
+        if (obj.ColorScreen != null)
+            out.color(obj.ColorScreen.color);
+        if (obj.Toggleable != null)
+            out.bool(obj.Toggleable.isActive);
+    }
+
+    /**
+     * A growable byte array to encode into.
+     */
+    private static class Output {
+        byte[] buffer;
+        int length = 0;
+
+        Output(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void ensure(int extra) {
+            if (length + extra > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, length + extra));
+        }
+
+        void bytes(byte[] bytes, int offset, int n) {
+            ensure(n);
+            System.arraycopy(bytes, offset, buffer, length, n);
+            length += n;
+        }
+
+        void varint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buffer[length++] = (byte) v;
+        }
+
+        void zigzag(int v) {
+            varint((v << 1) ^ (v >> 31));
+        }
+
+        void nullableInt(Integer v) {
+            if (v == null) {
+                varint(0);
+            } else {
+                varint(1);
+                zigzag(v);
+            }
+        }
+
+        void floatValue(float f) {
+            ensure(4);
+            int bits = Float.floatToRawIntBits(f);
+            buffer[length++] = (byte) (bits >>> 24);
+            buffer[length++] = (byte) (bits >>> 16);
+            buffer[length++] = (byte) (bits >>> 8);
+            buffer[length++] = (byte) bits;
+        }
+
+        void nullableFloat(Float f) {
+            bool(f == null ? null : true);
+            if (f != null)
+                floatValue(f);
+        }
+
+        /** A nullable boolean, as a single byte. */
+        void bool(Boolean b) {
+            ensure(1);
+            buffer[length++] = (byte) (b == null ? 0 : (b ? 2 : 1));
+        }
+
+        void vec3(Vec3 v) {
+            bool(v == null ? null : true);
+            if (v != null) {
+                floatValue(v.x);
+                floatValue(v.y);
+                floatValue(v.z);
+            }
+        }
+
+        void color(GameObject.Color c) {
+            bool(c == null ? null : true);
+            if (c != null) {
+                floatValue(c.r);
+                floatValue(c.g);
+                floatValue(c.b);
+            }
+        }
+
+        /** A nullable string, as a reference to the string table. */
+        void string(String s, Map<String, Integer> strings, List<String> table) {
+            if (s == null) {
+                varint(0);
+                return;
+            }
+            Integer index = strings.get(s);
+            if (index == null) {
+                index = table.size();
+                strings.put(s, index);
+                table.add(s);
+            }
+            varint(index + 1);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    // ========================================================================
+    // Decoding
+    // ========================================================================
+
+    /**
+     * Decode an observation from the remaining bytes of the given buffer.
+     */
+    public static Observation decode(ByteBuffer in) {
+        int tableSize = varint(in);
+        String[] table = new String[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            int n = varint(in);
+            if (in.hasArray()) {
+                table[i] = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+                in.position(in.position() + n);
+            } else {
+                byte[] bytes = new byte[n];
+                in.get(bytes);
+                table[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        Observation obs = new Observation();
+        int flags = varint(in);
+        if ((flags & HAS_AGENT) != 0) {
+            Observation.Agent agent = obs.new Agent();
+            agent.id = string(in, table);
+            agent.position = vec3(in);
+            agent.velocity = vec3(in);
+            agent.didNothing = bool(in);
+            agent.health = zigzag(in);
+            agent.score = zigzag(in);
+            agent.mood = string(in, table);
+            obs.agent = agent;
+        }
+        if ((flags & HAS_META) != 0) {
+            obs.meta = new Observation.Meta();
+            obs.meta.tick = varint(in) == 0 ? null : zigzag(in);
+            obs.meta.time = string(in, table);
+        }
+        if ((flags & HAS_OBJECTS) != 0) {
+            obs.objects = new GameObject[varint(in)];
+            for (int i = 0; i < obs.objects.length; i++)
+                obs.objects[i] = decodeGameObject(in, table);
+        }
+        if ((flags & HAS_NAVINDICES) != 0) {
+            int[] indices = new int[varint(in)];
+            int previous = 0;
+            for (int i = 0; i < indices.length; i++) {
+                previous += zigzag(in);
+                indices[i] = previous;
+            }
+            obs.navMeshIndices = indices;
+        }
+        obs.delta = (flags & IS_DELTA) != 0;
+        if ((flags & HAS_REMOVED) != 0) {
+            obs.removed = new String[varint(in)];
+            for (int i = 0; i < obs.removed.length; i++)
+                obs.removed[i] = string(in, table);
+        }
+        return obs;
+    }
+
+    private static GameObject decodeGameObject(ByteBuffer in, String[] table) {
+        int flags = varint(in);
+        if (flags == 128)
+            return null;
+        GameObject obj = new GameObject();
+        obj.name = string(in, table);
+        obj.tag = string(in, table);
+        obj.id = string(in, table);
+        if ((flags & HAS_COLLIDERS) != 0) {
+            obj.colliders = new GameObject.Collider[varint(in)];
+            for (int i = 0; i < obj.colliders.length; i++) {
+                if (bool(in) == null)
+                    continue;
+                GameObject.Collider c = new GameObject.Collider();
+                c.center = vec3(in);
+                c.size = vec3(in);
+                obj.colliders[i] = c;
+            }
+        }
+        if ((flags & HAS_TRANSFORM) != 0) {
+            obj.transform = new GameObject.Transform();
+            obj.transform.position = vec3(in);
+            obj.transform.rotation = vec3(in);
+            obj.transform.velocity = vec3(in);
+        }
+        if ((flags & HAS_INTERACTABLE) != 0) {
+            obj.Interactable = new GameObject.Interactable();
+            obj.Interactable.interactable = bool(in);
+            obj.Interactable.interactionCooldown = bool(in) == null ? null : in.getFloat();
+            obj.Interactable.timeSinceInteraction = bool(in) == null ? null : in.getFloat();
+        }
+        if ((flags & HAS_COLORIZED) != 0) {
+            obj.Colorized = new GameObject.Colorized();
+            obj.Colorized.color = color(in);
+        }
+        if ((flags & HAS_COLORSCREEN) != 0) {
+            obj.ColorScreen = new GameObject.ColorScreen();
+            obj.ColorScreen.color = color(in);
+        }
+        if ((flags & HAS_TOGGLEABLE) != 0) {
+            obj.Toggleable = new GameObject.Toggleable();
+            obj.Toggleable.isActive = bool(in);
+        }
+        if ((flags & HAS_FIREHAZARD) != 0)
+            obj.FireHazard = new GameObject.FireHazard();
+        return obj;
+    }
+
+    private static int varint(ByteBuffer in) {
+        int v = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            v |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return v;
+    }
+
+    private static int zigzag(ByteBuffer in) {
+        int v = varint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static Boolean bool(ByteBuffer in) {
+        byte b = in.get();
+        return b == 0 ? null : b == 2;
+    }
+
+    private static Vec3 vec3(ByteBuffer in) {
+        if (in.get() == 0)
+            return null;
+        return new Vec3(in.getFloat(), in.getFloat(), in.getFloat());
+    }
+
+    private static GameObject.Color color(ByteBuffer in) {
+        if (in.get() == 0)
+            return null;
+        GameObject.Color c = new GameObject.Color();
+        c.r = in.getFloat();
+        c.g = in.getFloat();
+        c.b = in.getFloat();
+        return c;
+    }
+
+    private static String string(ByteBuffer in, String[] table) {
+        int ref = varint(in);
+        return ref == 0 ? null : table[ref - 1];
+    }
+}
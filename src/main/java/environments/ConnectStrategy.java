@@ -0,0 +1,56 @@
+package environments;
+
+import java.util.Random;
+
+/**
+ * How {@link SocketReaderWriter} connects to the game, which may still be
+ * starting up: the connection is attempted repeatedly, with a pause between
+ * the attempts that doubles after every failure, from
+ * {@link #initial_backoff_ms} up to {@link #max_backoff_ms}. The pauses are
+ * jittered, so that many clients waiting for many game instances do not all
+ * retry at the same moments. After {@link #deadline_ms} the connection is given
+ * up.
+ *
+ * Optionally, a connection only counts once the game answers a request on it
+ * (see {@link #readiness_probe}), since the game may accept connections before
+ * it is able to serve them. The deadline also bounds the wait for that answer.
+ */
+public class ConnectStrategy {
+
+    /** The pause after the first failed attempt. The default is 10 ms. */
+    public long initial_backoff_ms = 10;
+
+    /** The longest pause between two attempts. The default is 500 ms. */
+    public long max_backoff_ms = 500;
+
+    /**
+     * The fraction by which a pause is randomly shortened, between 0 (no jitter)
+     * and 1. The default is 0.5.
+     */
+    public double jitter = 0.5;
+
+    /** How long to keep trying. The default is 20 s. */
+    public long deadline_ms = 20000;
+
+    /**
+     * If true, once connected, a DISCONNECT request is sent, which does not change
+     * the state of the game, and the connection only counts if the game answers
+     * it before the deadline; the connection is then opened again to be used.
+     * Else the connection is closed and retried. The default is false.
+     */
+    public boolean readiness_probe = false;
+
+    private final Random random = new Random();
+
+    /**
+     * The pause before the next attempt, after the given number of failed ones (at
+     * least 1).
+     */
+    public long backoff(int failedAttempts) {
+        long pause = initial_backoff_ms;
+        for (int k = 1; k < failedAttempts && pause < max_backoff_ms; k++)
+            pause *= 2;
+        pause = Math.min(pause, max_backoff_ms);
+        return pause - (long) (pause * jitter * random.nextDouble());
+    }
+}
@@ -0,0 +1,252 @@
+package environments;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import helperclasses.CSVExport;
+import helperclasses.LatencyHistogram;
+import helperclasses.PrintColor;
+
+/**
+ * Latency and throughput of the operations a {@link LabRecruitsEnvironment}
+ * performs, such as LOADWORLD, OBSERVE, MOVETOWARD and INTERACT. For every
+ * operation, the duration of each of its phases (see {@link Phase}) is recorded
+ * in a {@link LatencyHistogram}, and the bytes sent and received are counted.
+ * Comparing the WAIT phase, which is mostly spent by the game, with the other
+ * phases, which are spent by the Java side, tells whether a slow step is due to
+ * the game or to the client.
+ *
+ * The metrics can be read directly, exported to a csv file (see
+ * {@link #exportToCSV(String)}), or registered as a JMX bean (see
+ * {@link #register(String)}).
+ */
+public class EnvironmentMetrics implements EnvironmentMetricsMXBean {
+
+    /**
+     * The phases of an operation.
+     */
+    public enum Phase {
+        /** Converting the request to json. */
+        SERIALIZE,
+        /** Sending the request. */
+        WRITE,
+        /** Waiting for the response to arrive. */
+        WAIT,
+        /** Converting the response from json (or binary). */
+        DESERIALIZE,
+        /** Converting an observation to a {@link world.LabWorldModel}. */
+        TO_WORLD_MODEL,
+        /** The whole operation, from the request to the world model. */
+        TOTAL
+    }
+
+    static class Operation {
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+        final AtomicLong bytesOut = new AtomicLong();
+        final AtomicLong bytesIn = new AtomicLong();
+
+        Operation() {
+            for (int k = 0; k < phases.length; k++)
+                phases[k] = new LatencyHistogram();
+        }
+    }
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private volatile long startTime = System.nanoTime();
+
+    private Operation operation(String name) {
+        return operations.computeIfAbsent(name, n -> new Operation());
+    }
+
+    /**
+     * Record the duration, in nanoseconds, of a phase of the given operation.
+     */
+    public void record(String operation, Phase phase, long nanos) {
+        operation(operation).phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record the phases of the last write of the socket for the given operation.
+     */
+    void recordWrite(String operation, SocketReaderWriter.IoTimes io) {
+        var op = operation(operation);
+        op.phases[Phase.SERIALIZE.ordinal()].record(io.serializeNanos);
+        op.phases[Phase.WRITE.ordinal()].record(io.writeNanos);
+        op.bytesOut.addAndGet(io.bytesOut);
+    }
+
+    /**
+     * Record the phases of the last read of the socket for the given operation.
+     */
+    void recordRead(String operation, SocketReaderWriter.IoTimes io) {
+        var op = operation(operation);
+        op.phases[Phase.WAIT.ordinal()].record(io.waitNanos);
+        op.phases[Phase.DESERIALIZE.ordinal()].record(io.deserializeNanos);
+        op.bytesIn.addAndGet(io.bytesIn);
+    }
+
+    /**
+     * The operations recorded so far, in alphabetical order.
+     */
+    public List<String> operations() {
+        return new ArrayList<>(new TreeMap<>(operations).keySet());
+    }
+
+    /**
+     * The histogram of the durations, in nanoseconds, of the given phase of the
+     * given operation; null if the operation was not recorded.
+     */
+    public LatencyHistogram histogram(String operation, Phase phase) {
+        var op = operations.get(operation);
+        return op == null ? null : op.phases[phase.ordinal()];
+    }
+
+    public long bytesOut(String operation) {
+        var op = operations.get(operation);
+        return op == null ? 0 : op.bytesOut.get();
+    }
+
+    public long bytesIn(String operation) {
+        var op = operations.get(operation);
+        return op == null ? 0 : op.bytesIn.get();
+    }
+
+    /**
+     * The number of responses to the given operation received per second, since
+     * the metrics were created or reset.
+     */
+    public double operationsPerSecond(String operation) {
+        var op = operations.get(operation);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        return op == null || seconds <= 0 ? 0 : op.phases[Phase.WAIT.ordinal()].count() / seconds;
+    }
+
+    @Override
+    public void reset() {
+        for (var op : operations.values()) {
+            for (var h : op.phases)
+                h.reset();
+            op.bytesOut.set(0);
+            op.bytesIn.set(0);
+        }
+        startTime = System.nanoTime();
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (var name : operations())
+            for (var phase : Phase.values()) {
+                long n = histogram(name, phase).count();
+                if (n > 0)
+                    counts.put(name + "." + phase, n);
+            }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getLatencyMicros() {
+        Map<String, Double> latencies = new TreeMap<>();
+        for (var name : operations())
+            for (var phase : Phase.values()) {
+                var h = histogram(name, phase);
+                if (h.count() == 0)
+                    continue;
+                String key = name + "." + phase + ".";
+                latencies.put(key + "mean", h.mean() / 1e3);
+                latencies.put(key + "p50", h.percentile(50) / 1e3);
+                latencies.put(key + "p90", h.percentile(90) / 1e3);
+                latencies.put(key + "p99", h.percentile(99) / 1e3);
+                latencies.put(key + "p999", h.percentile(99.9) / 1e3);
+                latencies.put(key + "max", h.max() / 1e3);
+            }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getBytes() {
+        Map<String, Long> bytes = new TreeMap<>();
+        for (var name : operations()) {
+            bytes.put(name + ".out", bytesOut(name));
+            bytes.put(name + ".in", bytesIn(name));
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Double> getOperationsPerSecond() {
+        Map<String, Double> rates = new TreeMap<>();
+        for (var name : operations())
+            rates.put(name, operationsPerSecond(name));
+        return rates;
+    }
+
+    /**
+     * The metrics as rows of a table, one row per operation and phase, preceded
+     * by a header row. Durations are in microseconds.
+     */
+    public List<String[]> toRows() {
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[] { "operation", "phase", "count", "mean_us", "p50_us", "p90_us", "p99_us", "p999_us",
+                "max_us", "bytes_out", "bytes_in", "per_second" });
+        for (var name : operations())
+            for (var phase : Phase.values()) {
+                var h = histogram(name, phase);
+                if (h.count() == 0)
+                    continue;
+                rows.add(new String[] { name, phase.toString(), "" + h.count(), micros(h.mean()),
+                        micros(h.percentile(50)), micros(h.percentile(90)), micros(h.percentile(99)),
+                        micros(h.percentile(99.9)), micros(h.max()), "" + bytesOut(name), "" + bytesIn(name),
+                        String.format(Locale.ROOT, "%.1f", operationsPerSecond(name)) });
+            }
+        return rows;
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e3);
+    }
+
+    /**
+     * Write the metrics to a csv file; see {@link #toRows()}.
+     */
+    public void exportToCSV(String filename) throws IOException {
+        CSVExport.exportToCSV(toRows(), filename);
+    }
+
+    /**
+     * Register these metrics at the platform's MBean server, under the name
+     * "environments:type=LabRecruitsEnvironment,name=" + name. Return the object
+     * name, or null if the registration fails.
+     */
+    public ObjectName register(String name) {
+        try {
+            var objectName = new ObjectName("environments:type=LabRecruitsEnvironment,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            System.out.println(PrintColor.FAILURE() + ": Cannot register the metrics as " + name + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remove the registration made by {@link #register(String)}.
+     */
+    public static void unregister(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // it is gone already
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package environments;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link EnvironmentMetrics}. The keys of the maps are made of
+ * the operation (e.g. OBSERVE), the phase (e.g. WAIT), and the statistic,
+ * separated by dots.
+ */
+public interface EnvironmentMetricsMXBean {
+
+    /**
+     * The number of recorded durations, e.g. "OBSERVE.WAIT" -> 1200.
+     */
+    Map<String, Long> getCounts();
+
+    /**
+     * Statistics of the durations, in microseconds, e.g. "OBSERVE.WAIT.p99" ->
+     * 850.0. The statistics are mean, p50, p90, p99, p999 and max.
+     */
+    Map<String, Double> getLatencyMicros();
+
+    /**
+     * The bytes sent and received, e.g. "OBSERVE.out" and "OBSERVE.in".
+     */
+    Map<String, Long> getBytes();
+
+    /**
+     * For every operation, the number of responses received per second, since the
+     * metrics were created or reset.
+     */
+    Map<String, Double> getOperationsPerSecond();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
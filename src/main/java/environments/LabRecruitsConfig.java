@@ -30,6 +30,64 @@ public class LabRecruitsConfig {
      */
     public transient int port = 8053;
 
+    /**
+     * How to connect to the game, which may still be starting up; see
+     * {@link ConnectStrategy}.
+     */
+    public transient ConnectStrategy connect_strategy = new ConnectStrategy();
+
+    /**
+     * If true, the environment talks to the game through a non-blocking NIO
+     * channel ({@link NioSocketReaderWriter}) rather than a classic socket. The
+     * default is false.
+     */
+    public transient boolean nio_transport = false;
+
+    /**
+     * If true, responses from the game are parsed directly from the socket stream
+     * instead of first being read into a String. This only applies to the classic
+     * (non-NIO) transport. The default is false.
+     */
+    public transient boolean stream_responses = false;
+
+    /**
+     * The maximum number of agent-commands that
+     * {@link LabRecruitsEnvironment#pipelineCommands(java.util.List)} keeps in
+     * flight, that is, sent to the game while their responses are not read yet.
+     * The default is 4.
+     */
+    public transient int pipeline_window = 4;
+
+    /**
+     * If true, {@link LabRecruitsEnvironment#stepAll(java.util.Map)} sends the
+     * commands of all agents to the game as one AGENTCOMMANDS request. This
+     * request type is only understood by game builds that support it. If false,
+     * the commands are sent one per request, pipelined (see
+     * {@link #pipeline_window}). The default is false.
+     */
+    public transient boolean batch_commands = false;
+
+    /**
+     * If true, the {@link LabRecruitsEnvironment#metrics()} of an environment are
+     * registered as a JMX bean while it is open. The default is false.
+     */
+    public transient boolean jmx_metrics = false;
+
+    /**
+     * If not null, the navigation mesh of the level is cached in this directory
+     * (see {@link NavMeshCache}), and later loads of the same level use the cached
+     * mesh. The default is null: no caching.
+     */
+    public transient String navmesh_cache_dir = null;
+
+    /**
+     * If true, a nav-mesh taken from the cache (see {@link #navmesh_cache_dir}) is
+     * not copied into the heap, but used directly from the memory-mapped cache
+     * file, which is then shared by all environments in the JVM that use the same
+     * level. The default is false.
+     */
+    public transient boolean navmesh_off_heap = false;
+
     // configurations
     public int seed = 1;
 
@@ -70,6 +128,50 @@ public class LabRecruitsConfig {
 
     public float light_intensity = 0.5f;
 
+    /**
+     * The possible framings of the messages exchanged with the game.
+     */
+    public enum WireFormat {
+        /** One json document per line. */
+        JSON,
+        /**
+         * Length-prefixed frames, where observations are encoded in a compact
+         * binary format; see {@link BinaryObservationCodec}.
+         */
+        BINARY
+    }
+
+    /**
+     * The framing of the messages exchanged with the game after the first INIT
+     * request (that request and its response are always json lines). The game
+     * learns the requested framing from this configuration, and should switch to
+     * it after answering the first INIT. The framing is then kept for the rest of
+     * the connection, so a later INIT, e.g. to load the level again, and its
+     * response are framed as well. The game must support the requested framing.
+     * The default is JSON.
+     */
+    public WireFormat wire_format = WireFormat.JSON;
+
+    /**
+     * If true, the game is asked to send delta observations: after the first
+     * observation of an agent, only the game objects that came into view, changed,
+     * or went out of view are sent (see {@link world.Observation#delta}). The
+     * world model of the agent then has to be kept up to date through
+     * {@link world.LabWorldModel#mergeNewObservation}. The game must support
+     * this. The default is false.
+     */
+    public boolean delta_observations = false;
+
+    /**
+     * If false, the game is asked to answer the INIT request with just true,
+     * rather than with the navigation mesh of the level.
+     * {@link LabRecruitsEnvironment} sets this for its INIT request when it takes
+     * the mesh from the {@link NavMeshCache}. A game that does not support this
+     * still sends the mesh, which is then skipped without being parsed. The
+     * default is true.
+     */
+    public boolean send_navmesh = true;
+
     /**
      * Extra links between switches and doors that we want to explicitly add through
      * this configuration.
@@ -106,6 +208,39 @@ public class LabRecruitsConfig {
         useLevel(levelName, levelFolder);
     }
 
+    /**
+     * Return a copy of this configuration, which can then be changed without
+     * affecting this one.
+     */
+    public LabRecruitsConfig copy() {
+        var c = new LabRecruitsConfig();
+        c.host = host;
+        c.port = port;
+        c.connect_strategy = connect_strategy;
+        c.nio_transport = nio_transport;
+        c.stream_responses = stream_responses;
+        c.pipeline_window = pipeline_window;
+        c.batch_commands = batch_commands;
+        c.jmx_metrics = jmx_metrics;
+        c.navmesh_cache_dir = navmesh_cache_dir;
+        c.navmesh_off_heap = navmesh_off_heap;
+        c.seed = seed;
+        c.level_path = level_path;
+        c.level_name = level_name;
+        c.agent_speed = agent_speed;
+        c.npc_speed = npc_speed;
+        c.fire_spread = fire_spread;
+        c.jump_force = jump_force;
+        c.view_distance = view_distance;
+        c.light_intensity = light_intensity;
+        c.wire_format = wire_format;
+        c.delta_observations = delta_observations;
+        c.send_navmesh = send_navmesh;
+        c.add_links = new ArrayList<>(add_links);
+        c.remove_links = new ArrayList<>(remove_links);
+        return c;
+    }
+
     private LabRecruitsConfig useLevel(String levelName, String levelFolder) {
         String fullPath = Paths.get(levelFolder, levelName + ".csv").toAbsolutePath().toString();
         Util.verifyPath(fullPath);
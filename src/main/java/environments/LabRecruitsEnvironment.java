@@ -11,6 +11,7 @@ import nl.uu.cs.aplib.utils.Pair;
 import eu.iv4xr.framework.exception.Iv4xrError;
 import eu.iv4xr.framework.mainConcepts.W3DEnvironment;
 import eu.iv4xr.framework.spatial.Vec3;
+import eu.iv4xr.framework.spatial.meshes.Mesh;
 import game.LabRecruitsTestServer;
 import game.Platform;
 import helperclasses.PrintColor;
@@ -19,6 +20,18 @@ import world.LabWorldModel;
 import world.Observation;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
 
 /**
  * This "Environment" provides methods to control and get observations from a
@@ -52,8 +65,33 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
 
     static public String INTERACT_CMDNAME = "Interact";
 
+    /**
+     * Passed as the argument of the load-world command when the nav-mesh is taken
+     * from the {@link NavMeshCache}, so that the game is asked not to send it
+     * (see {@link LabRecruitsConfig#send_navmesh}).
+     */
+    private static final Object SKIP_NAVMESH = new Object();
+
     private SocketReaderWriter socket;
 
+    /**
+     * The names of the operations in the {@link #metrics()}. Other requests, such
+     * as DISCONNECT, are recorded under the name of their request type.
+     */
+    public static final String CONNECT = "CONNECT", LOADWORLD = "LOADWORLD", OBSERVE = "OBSERVE",
+            MOVETOWARD = "MOVETOWARD", INTERACT = "INTERACT", AGENTCOMMANDS = "AGENTCOMMANDS";
+
+    private final EnvironmentMetrics metrics = new EnvironmentMetrics();
+
+    // the name under which the metrics are registered in JMX, if they are
+    private ObjectName metricsName;
+
+    /**
+     * The thread that runs the asynchronous commands, such as
+     * {@link #observeAsync(String)}. It is created when first needed.
+     */
+    private ExecutorService ioThread;
+
     /**
      * Create an instance of this environment with the standard Lab Recruits
      * configuration.
@@ -68,10 +106,26 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
      */
     public LabRecruitsEnvironment(LabRecruitsConfig gameConfig) {
         this.gameconfig = gameConfig;
-        socket = new SocketReaderWriter(gameConfig.host, gameConfig.port);
+        socket = gameConfig.nio_transport
+                ? new NioSocketReaderWriter(gameConfig.host, gameConfig.port, gameConfig.connect_strategy)
+                : new SocketReaderWriter(gameConfig.host, gameConfig.port, gameConfig.connect_strategy);
+        socket.setStreaming(gameConfig.stream_responses);
+        if (socket.timeToReadyMillis() >= 0)
+            metrics.record(CONNECT, EnvironmentMetrics.Phase.TOTAL, (long) (socket.timeToReadyMillis() * 1e6));
+        if (gameConfig.jmx_metrics)
+            metricsName = metrics.register(gameConfig.host + ":" + gameConfig.port + "#" + System.identityHashCode(this));
         loadWorld();
     }
 
+    /**
+     * The time, in ms, it took to connect to the game; see
+     * {@link SocketReaderWriter#timeToReadyMillis()}. It is also recorded in the
+     * {@link #metrics()}, as the TOTAL of the CONNECT operation.
+     */
+    public float timeToReadyMillis() {
+        return socket.timeToReadyMillis();
+    }
+
     /**
      * Return the Lab Recruits game-configuration used by this environment.
      */
@@ -87,11 +141,36 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
      */
     @Override
     public void loadWorld() {
-        var rawmesh = (LabRecruitsRawNavMesh) sendCommand(null, null, LOADWORLD_CMDNAME, null,
-                LabRecruitsRawNavMesh.class);
-        if (rawmesh == null)
-            throw new Iv4xrError("Fail to load the navgation-graph of the world");
-        worldNavigableMesh = rawmesh.covertToMesh();
+        var event = ProtocolEvents.LoadWorld.start();
+        NavMeshCache cache = gameconfig.navmesh_cache_dir == null ? null
+                : new NavMeshCache(Paths.get(gameconfig.navmesh_cache_dir));
+        // the level file is hashed once, for both the lookup and the store:
+        Path cacheFile = cache == null ? null : cache.entry(gameconfig);
+        Mesh cached = cacheFile == null ? null : cache.load(cacheFile, gameconfig.navmesh_off_heap);
+        if (cached != null) {
+            // the game still has to load the level, but it does not need to send
+            // the mesh back:
+            if (sendCommand(null, null, LOADWORLD_CMDNAME, SKIP_NAVMESH, Boolean.class) == null)
+                throw new Iv4xrError("Fail to load the world");
+            worldNavigableMesh = cached;
+        } else {
+            var rawmesh = (LabRecruitsRawNavMesh) sendCommand(null, null, LOADWORLD_CMDNAME, null,
+                    LabRecruitsRawNavMesh.class);
+            if (rawmesh == null)
+                throw new Iv4xrError("Fail to load the navgation-graph of the world");
+            worldNavigableMesh = rawmesh.covertToMesh();
+            if (cacheFile != null)
+                cache.store(cacheFile, worldNavigableMesh);
+        }
+        if (event != null)
+            event.end();
+        if (event != null && event.shouldCommit()) {
+            event.level = gameconfig.level_name;
+            event.fromCache = cached != null;
+            event.vertices = worldNavigableMesh.vertices.size();
+            event.faces = worldNavigableMesh.faces.size();
+            event.commit();
+        }
     }
 
     /**
@@ -129,6 +208,64 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
         return (LabWorldModel) sendCommand(agentId, targetId, INTERACT_CMDNAME, null, null);
     }
 
+    /**
+     * The asynchronous variant of {@link #observe(String)}. The command is sent,
+     * and its response awaited, by a dedicated I/O thread of this environment, so
+     * that the calling thread can do other work in the meantime. Commands that are
+     * submitted asynchronously are executed in the order of submission.
+     * 
+     * Note that the connection to the game can only serve one command at a time:
+     * a synchronous command invoked while asynchronous ones are pending will wait
+     * for its turn.
+     */
+    public CompletableFuture<LabWorldModel> observeAsync(String agentId) {
+        return CompletableFuture.supplyAsync(() -> observe(agentId), ioThread());
+    }
+
+    /**
+     * The asynchronous variant of {@link #moveToward(String, Vec3, Vec3)}. See
+     * also {@link #observeAsync(String)}.
+     */
+    public CompletableFuture<LabWorldModel> moveTowardAsync(String agentId, Vec3 agentLocation,
+            Vec3 targetLocation) {
+        return CompletableFuture.supplyAsync(() -> moveToward(agentId, agentLocation, targetLocation), ioThread());
+    }
+
+    /**
+     * The asynchronous variant of {@link #interact(String, String, String)}. See
+     * also {@link #observeAsync(String)}.
+     */
+    public CompletableFuture<LabWorldModel> interactAsync(String agentId, String targetId, String interactionType) {
+        return CompletableFuture.supplyAsync(() -> interact(agentId, targetId, interactionType), ioThread());
+    }
+
+    private synchronized ExecutorService ioThread() {
+        if (ioThread == null) {
+            ioThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "LabRecruits-io-" + gameconfig.host + ":" + gameconfig.port);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return ioThread;
+    }
+
+    /**
+     * Let the I/O thread finish the asynchronous commands still pending, and then
+     * stop it.
+     */
+    private synchronized void shutdownIoThread() {
+        if (ioThread == null)
+            return;
+        ioThread.shutdown();
+        try {
+            ioThread.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioThread = null;
+    }
+
     // place holder for debugging ... to be removed later
     Observation obs;
 
@@ -142,9 +279,33 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
         // The way the communication with Lab Recruit works, an EnvOperation cannot be
         // send directly to LR. Instead, we need to translate it first to the right
         // instance of "Request" object.
+        long start = System.nanoTime();
         try {
             if (cmd.command.equals(LOADWORLD_CMDNAME)) {
-                return sendPackage(Request.gymEnvironmentInitialisation(gameconfig));
+                Object response;
+                if (cmd.arg == SKIP_NAVMESH) {
+                    // a game that does not know send_navmesh still sends the mesh;
+                    // either way, the response is not parsed. The flag is set on a
+                    // copy, as the configuration may be shared:
+                    var config = gameconfig.copy();
+                    config.send_navmesh = false;
+                    synchronized (socket) {
+                        send(Request.gymEnvironmentInitialisation(config), LOADWORLD);
+                        response = socket.skip() ? true : null;
+                        metrics.recordRead(LOADWORLD, socket.lastIo());
+                    }
+                    if (response == null)
+                        System.out.println(String.format("%s: The game closed the connection while loading the level.",
+                                PrintColor.FAILURE()));
+                } else {
+                    response = sendPackage(Request.gymEnvironmentInitialisation(gameconfig), LOADWORLD);
+                }
+                // the switch is made once; a later INIT is sent, and answered, framed:
+                if (response != null && gameconfig.wire_format == LabRecruitsConfig.WireFormat.BINARY
+                        && !socket.usesBinaryFraming())
+                    socket.useBinaryFraming();
+                metrics.record(LOADWORLD, EnvironmentMetrics.Phase.TOTAL, System.nanoTime() - start);
+                return response;
             }
             Request<Observation> request;
             if (cmd.command.equals(OBSERVE_CMDNAME)) {
@@ -153,30 +314,178 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
                 Vec3 agentLocation = ((Pair<Vec3, Vec3>) cmd.arg).fst;
                 Vec3 targetLocation = ((Pair<Vec3, Vec3>) cmd.arg).snd;
 
-                // Calculate the move direction:
-                Vec3 direction = Vec3.sub(targetLocation, agentLocation);
-                if (direction.length() > AGENTSPEED) {
-                    // the distance is too far, given the agent speed. Calculate a new
-                    // target position, which is reachable given the speed:
-                    direction = direction.normalized();
-                    direction = Vec3.mul(direction, AGENTSPEED);
-                    targetLocation = Vec3.add(agentLocation, direction);
-                }
+                targetLocation = stepTarget(agentLocation, targetLocation);
                 boolean jump = false; // for now, we will not use jumps
                 request = Request.command(AgentCommand.moveTowardCommand(cmd.invokerId, targetLocation, jump));
             } else if (cmd.command.equals(INTERACT_CMDNAME)) {
                 request = Request.command(AgentCommand.interactCommand(cmd.invokerId, cmd.targetId));
             } else
                 throw new IllegalArgumentException();
-            Observation obs = sendPackage(request);
+            String operation = operationName((AgentCommand) request.arg);
+            Observation obs = sendPackage(request, operation);
             this.obs = obs; // copying the observation for debugging, for now...
-            return Observation.toWorldModel(obs);
+            LabWorldModel wom = toWorldModel(obs, operation);
+            metrics.record(operation, EnvironmentMetrics.Phase.TOTAL, System.nanoTime() - start);
+            return wom;
         } catch (IOException ex) {
             System.out.println("I/O error: " + ex.getMessage());
             return null;
         }
     }
 
+    /**
+     * The name under which the given agent-command is recorded in the
+     * {@link #metrics()}.
+     */
+    private static String operationName(AgentCommand command) {
+        switch (command.cmd) {
+        case DONOTHING:
+            return OBSERVE;
+        case MOVETOWARD:
+            return MOVETOWARD;
+        default:
+            return INTERACT;
+        }
+    }
+
+    private LabWorldModel toWorldModel(Observation obs, String operation) {
+        long start = System.nanoTime();
+        LabWorldModel wom = Observation.toWorldModel(obs);
+        metrics.record(operation, EnvironmentMetrics.Phase.TO_WORLD_MODEL, System.nanoTime() - start);
+        return wom;
+    }
+
+    /**
+     * The latencies and sizes of the operations of this environment so far.
+     */
+    public EnvironmentMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Return the location the agent should be moved to if it wants to go from
+     * agentLocation towards targetLocation. This is targetLocation, if it is
+     * reachable within one update given the agent's speed, and else it is a
+     * location along the way.
+     */
+    private static Vec3 stepTarget(Vec3 agentLocation, Vec3 targetLocation) {
+        // Calculate the move direction:
+        Vec3 direction = Vec3.sub(targetLocation, agentLocation);
+        if (direction.length() > AGENTSPEED) {
+            // the distance is too far, given the agent speed. Calculate a new
+            // target position, which is reachable given the speed:
+            direction = direction.normalized();
+            direction = Vec3.mul(direction, AGENTSPEED);
+            targetLocation = Vec3.add(agentLocation, direction);
+        }
+        return targetLocation;
+    }
+
+    /**
+     * Send the given agent-commands to Lab Recruits in a pipelined way. Rather
+     * than waiting for the response of each command before sending the next one,
+     * up to {@link LabRecruitsConfig#pipeline_window} commands are written
+     * back-to-back, so that their round-trips to the game overlap. The responses
+     * are matched to the commands in order; the i-th element of the returned list
+     * is the observation that came back for the i-th command.
+     * 
+     * If an I/O error occurs, the returned list only contains the responses that
+     * were received before the error.
+     *
+     * In the {@link #metrics()}, the TOTAL of every command is recorded, from
+     * just before it is sent until its world model is made.
+     */
+    public List<LabWorldModel> pipelineCommands(List<AgentCommand> commands) {
+        int window = Math.max(1, gameconfig.pipeline_window);
+        List<LabWorldModel> responses = new ArrayList<>(commands.size());
+        long[] sendTimes = new long[commands.size()];
+        int sent = 0;
+        try {
+            synchronized (socket) {
+                while (responses.size() < commands.size()) {
+                    // fill the window:
+                    while (sent < commands.size() && sent - responses.size() < window) {
+                        sendTimes[sent] = System.nanoTime();
+                        send(Request.command(commands.get(sent)), operationName(commands.get(sent)));
+                        sent++;
+                    }
+                    // then wait for the oldest command in flight:
+                    String operation = operationName(commands.get(responses.size()));
+                    Observation obs = receive(Observation.class, operation);
+                    this.obs = obs;
+                    responses.add(toWorldModel(obs, operation));
+                    metrics.record(operation, EnvironmentMetrics.Phase.TOTAL,
+                            System.nanoTime() - sendTimes[responses.size() - 1]);
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("I/O error: " + ex.getMessage());
+        }
+        return responses;
+    }
+
+    /**
+     * Execute one command for each of the given agents, e.g. to advance all agents
+     * of a multi-agent level by one step, and return the resulting observation of
+     * each agent, by agent-id, in the order of the given map. If
+     * {@link LabRecruitsConfig#batch_commands} is set, all commands are sent in a
+     * single request, and the game sends back all observations at once; else the
+     * commands are sent with {@link #pipelineCommands(List)}.
+     *
+     * In the {@link #metrics()}, a batch is recorded as one AGENTCOMMANDS
+     * operation, whose TOTAL lasts from sending the batch until the world models
+     * of all its observations are made. Pipelined commands are recorded one by
+     * one, as in {@link #pipelineCommands(List)}.
+     */
+    public Map<String, LabWorldModel> stepAll(Map<String, AgentCommand> commands) {
+        List<String> agentIds = new ArrayList<>(commands.keySet());
+        List<AgentCommand> batch = new ArrayList<>(commands.values());
+        List<LabWorldModel> responses;
+        if (gameconfig.batch_commands) {
+            responses = new ArrayList<>(batch.size());
+            try {
+                synchronized (socket) {
+                    long start = System.nanoTime();
+                    send(Request.commands(batch), AGENTCOMMANDS);
+                    for (int k = 0; k < batch.size(); k++) {
+                        String operation = operationName(batch.get(k));
+                        Observation obs = receive(Observation.class, operation);
+                        this.obs = obs;
+                        responses.add(toWorldModel(obs, operation));
+                    }
+                    metrics.record(AGENTCOMMANDS, EnvironmentMetrics.Phase.TOTAL, System.nanoTime() - start);
+                }
+            } catch (IOException ex) {
+                System.out.println("I/O error: " + ex.getMessage());
+            }
+        } else {
+            responses = pipelineCommands(batch);
+        }
+        Map<String, LabWorldModel> observations = new LinkedHashMap<>();
+        for (int k = 0; k < responses.size(); k++)
+            observations.put(agentIds.get(k), responses.get(k));
+        return observations;
+    }
+
+    /**
+     * Move the specified agent along the given waypoints, using
+     * {@link #pipelineCommands(List)}. Each waypoint is broken down into
+     * move-steps that the agent can make within one update. The steps are
+     * planned assuming that the agent does reach every step, starting from the
+     * given agentLocation. The observations after each step are returned.
+     */
+    public List<LabWorldModel> pipelineMoveAlong(String agentId, Vec3 agentLocation, List<Vec3> waypoints) {
+        List<AgentCommand> commands = new ArrayList<>();
+        Vec3 location = agentLocation;
+        for (Vec3 waypoint : waypoints) {
+            do {
+                location = stepTarget(location, waypoint);
+                commands.add(AgentCommand.moveTowardCommand(agentId, location, false));
+            } while (Vec3.dist(location, waypoint) > 0.001f);
+        }
+        return pipelineCommands(commands);
+    }
+
     /**
      * Unpaused Lab Recruits, if it was paused.
      */
@@ -221,6 +530,11 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
      * Close the socket and connection with the Lab Recruits.
      */
     public boolean close() {
+        shutdownIoThread();
+        if (metricsName != null) {
+            EnvironmentMetrics.unregister(metricsName);
+            metricsName = null;
+        }
         try {
             boolean success = sendPackage(Request.disconnect());
             if (success) {
@@ -252,7 +566,65 @@ public class LabRecruitsEnvironment extends W3DEnvironment {
      * response. The command to send should be wrapped as a "Request" object.
      */
     private <T> T sendPackage(Request<T> packageToSend) throws IOException {
-        socket.write(packageToSend);
-        return socket.read(packageToSend.responseType);
+        return sendPackage(packageToSend, packageToSend.cmd.name());
+    }
+
+    /**
+     * As {@link #sendPackage(Request)}, recording the write and the read in the
+     * {@link #metrics()} as the given operation.
+     */
+    private <T> T sendPackage(Request<T> packageToSend, String operation) throws IOException {
+        synchronized (socket) {
+            send(packageToSend, operation);
+            return receive(packageToSend.responseType, operation);
+        }
+    }
+
+    /**
+     * Write the request to the socket, recording it in the {@link #metrics()} as
+     * the given operation, and as a {@link ProtocolEvents.RequestSent} event. The
+     * caller should hold the lock of the socket.
+     */
+    private void send(Request<?> request, String operation) {
+        var event = ProtocolEvents.RequestSent.start();
+        socket.write(request);
+        if (event != null)
+            event.end();
+        metrics.recordWrite(operation, socket.lastIo());
+        if (event != null && event.shouldCommit()) {
+            event.requestType = request.cmd.name();
+            event.operation = operation;
+            if (request.arg instanceof AgentCommand)
+                event.agentId = ((AgentCommand) request.arg).agentId;
+            event.bytes = socket.lastIo().bytesOut;
+            event.commit();
+        }
+    }
+
+    /**
+     * Read a response from the socket, recording it in the {@link #metrics()} as
+     * the given operation, and, if it is an observation, as a
+     * {@link ProtocolEvents.ObservationReceived} event. The caller should hold the
+     * lock of the socket.
+     */
+    private <T> T receive(Class<T> responseType, String operation) throws IOException {
+        var event = ProtocolEvents.ObservationReceived.start();
+        T response = socket.read(responseType);
+        if (event != null)
+            event.end();
+        metrics.recordRead(operation, socket.lastIo());
+        if (event != null && response instanceof Observation && event.shouldCommit()) {
+            Observation obs = (Observation) response;
+            event.operation = operation;
+            if (obs.agent != null)
+                event.agentId = obs.agent.id;
+            if (obs.meta != null && obs.meta.tick != null)
+                event.tick = obs.meta.tick;
+            event.objectCount = obs.objects == null ? 0 : obs.objects.length;
+            event.delta = obs.delta;
+            event.bytes = socket.lastIo().bytesIn;
+            event.commit();
+        }
+        return response;
     }
 }
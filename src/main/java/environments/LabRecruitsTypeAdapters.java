@@ -0,0 +1,747 @@
+package environments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import helperclasses.LegacyTuple;
+import world.Observation;
+import world.Observation.GameObject;
+
+/**
+ * Hand-written Gson type-adapters for the objects we exchange with Lab
+ * Recruits. Gson would otherwise (de)serialize them through reflection. The
+ * adapters produce and accept exactly the same json as the reflective
+ * serializer configured in {@link SocketReaderWriter}.
+ *
+ * Observations (and everything in them) can be read and written. Requests,
+ * agent-commands and {@link LegacyTuple}s are only ever sent to the game, so
+ * for these only writing is hand-coded; reading them falls back to Gson's
+ * reflective adapter.
+ */
+public class LabRecruitsTypeAdapters implements TypeAdapterFactory {
+
+    /**
+     * Register the adapters in the given builder.
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder.registerTypeAdapterFactory(new LabRecruitsTypeAdapters());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Vec3.class)
+            return (TypeAdapter<T>) VEC3;
+        if (rawType == Observation.class)
+            return (TypeAdapter<T>) OBSERVATION;
+        if (rawType == GameObject.class)
+            return (TypeAdapter<T>) GAMEOBJECT;
+        if (rawType == Request.class || rawType == AgentCommand.class || rawType == LegacyTuple.class) {
+            TypeAdapter<T> reflective = gson.getDelegateAdapter(this, type);
+            return new TypeAdapter<T>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    writeCommandObject(gson, out, value);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return reflective.read(in);
+                }
+            };
+        }
+        return null;
+    }
+
+    static final TypeAdapter<Vec3> VEC3 = new TypeAdapter<Vec3>() {
+        @Override
+        public void write(JsonWriter out, Vec3 value) throws IOException {
+            writeVec3(out, value);
+        }
+
+        @Override
+        public Vec3 read(JsonReader in) throws IOException {
+            return readVec3(in);
+        }
+    };
+
+    static final TypeAdapter<Observation> OBSERVATION = new TypeAdapter<Observation>() {
+        @Override
+        public void write(JsonWriter out, Observation value) throws IOException {
+            writeObservation(out, value);
+        }
+
+        @Override
+        public Observation read(JsonReader in) throws IOException {
+            return readObservation(in);
+        }
+    };
+
+    static final TypeAdapter<GameObject> GAMEOBJECT = new TypeAdapter<GameObject>() {
+        @Override
+        public void write(JsonWriter out, GameObject value) throws IOException {
+            writeGameObject(out, value);
+        }
+
+        @Override
+        public GameObject read(JsonReader in) throws IOException {
+            return readGameObject(in);
+        }
+    };
+
+    // ========================================================================
+    // Reading
+    // ========================================================================
+
+    /**
+     * Return true, and consume the null, if the next value is a json null.
+     */
+    private static boolean nextIsNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        return nextIsNull(in) ? null : in.nextString();
+    }
+
+    private static Boolean readBoolean(JsonReader in) throws IOException {
+        return nextIsNull(in) ? null : in.nextBoolean();
+    }
+
+    private static Float readFloat(JsonReader in) throws IOException {
+        return nextIsNull(in) ? null : (float) in.nextDouble();
+    }
+
+    static Vec3 readVec3(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        float x = 0, y = 0, z = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "x":
+                x = (float) in.nextDouble();
+                break;
+            case "y":
+                y = (float) in.nextDouble();
+                break;
+            case "z":
+                z = (float) in.nextDouble();
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Vec3(x, y, z);
+    }
+
+    static Observation readObservation(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        Observation obs = new Observation();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "agent":
+                obs.agent = readAgent(in, obs);
+                break;
+            case "meta":
+                obs.meta = readMeta(in);
+                break;
+            case "objects":
+                obs.objects = readGameObjects(in);
+                break;
+            case "navMeshIndices":
+                obs.navMeshIndices = readIntArray(in);
+                break;
+            case "delta":
+                obs.delta = in.nextBoolean();
+                break;
+            case "removed":
+                obs.removed = readStringArray(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return obs;
+    }
+
+    private static Observation.Agent readAgent(JsonReader in, Observation obs) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        Observation.Agent agent = obs.new Agent();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "id":
+                agent.id = readString(in);
+                break;
+            case "position":
+                agent.position = readVec3(in);
+                break;
+            case "velocity":
+                agent.velocity = readVec3(in);
+                break;
+            case "didNothing":
+                agent.didNothing = readBoolean(in);
+                break;
+            case "health":
+                if (!nextIsNull(in))
+                    agent.health = in.nextInt();
+                break;
+            case "score":
+                if (!nextIsNull(in))
+                    agent.score = in.nextInt();
+                break;
+            case "mood":
+                agent.mood = readString(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return agent;
+    }
+
+    private static Observation.Meta readMeta(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        Observation.Meta meta = new Observation.Meta();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "tick":
+                meta.tick = nextIsNull(in) ? null : in.nextInt();
+                break;
+            case "time":
+                meta.time = readString(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return meta;
+    }
+
+    private static GameObject[] readGameObjects(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        ArrayList<GameObject> objects = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+            objects.add(readGameObject(in));
+        in.endArray();
+        return objects.toArray(new GameObject[objects.size()]);
+    }
+
+    static int[] readIntArray(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        int[] values = new int[16];
+        int n = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (n == values.length)
+                values = Arrays.copyOf(values, 2 * n);
+            values[n++] = in.nextInt();
+        }
+        in.endArray();
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    static String[] readStringArray(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        ArrayList<String> values = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext())
+            values.add(readString(in));
+        in.endArray();
+        return values.toArray(new String[values.size()]);
+    }
+
+    static GameObject readGameObject(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        GameObject obj = new GameObject();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "name":
+                obj.name = readString(in);
+                break;
+            case "tag":
+                obj.tag = readString(in);
+                break;
+            case "id":
+                obj.id = readString(in);
+                break;
+            case "colliders":
+                obj.colliders = readColliders(in);
+                break;
+            case "transform":
+                obj.transform = readTransform(in);
+                break;
+            case "Interactable":
+                obj.Interactable = readInteractable(in);
+                break;
+            case "Colorized":
+                if (!nextIsNull(in)) {
+                    obj.Colorized = new GameObject.Colorized();
+                    obj.Colorized.color = readColorField(in);
+                }
+                break;
+            case "ColorScreen":
+                if (!nextIsNull(in)) {
+                    obj.ColorScreen = new GameObject.ColorScreen();
+                    obj.ColorScreen.color = readColorField(in);
+                }
+                break;
+            case "Toggleable":
+                obj.Toggleable = readToggleable(in);
+                break;
+            case "FireHazard":
+                if (!nextIsNull(in)) {
+                    in.skipValue();
+                    obj.FireHazard = new GameObject.FireHazard();
+                }
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return obj;
+    }
+
+    private static GameObject.Collider[] readColliders(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        ArrayList<GameObject.Collider> colliders = new ArrayList<>(1);
+        in.beginArray();
+        while (in.hasNext()) {
+            if (nextIsNull(in)) {
+                colliders.add(null);
+                continue;
+            }
+            GameObject.Collider collider = new GameObject.Collider();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "center":
+                    collider.center = readVec3(in);
+                    break;
+                case "size":
+                    collider.size = readVec3(in);
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            colliders.add(collider);
+        }
+        in.endArray();
+        return colliders.toArray(new GameObject.Collider[colliders.size()]);
+    }
+
+    private static GameObject.Transform readTransform(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        GameObject.Transform transform = new GameObject.Transform();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "position":
+                transform.position = readVec3(in);
+                break;
+            case "rotation":
+                transform.rotation = readVec3(in);
+                break;
+            case "velocity":
+                transform.velocity = readVec3(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return transform;
+    }
+
+    private static GameObject.Interactable readInteractable(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        GameObject.Interactable interactable = new GameObject.Interactable();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "interactable":
+                interactable.interactable = readBoolean(in);
+                break;
+            case "interactionCooldown":
+                interactable.interactionCooldown = readFloat(in);
+                break;
+            case "timeSinceInteraction":
+                interactable.timeSinceInteraction = readFloat(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return interactable;
+    }
+
+    private static GameObject.Toggleable readToggleable(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        GameObject.Toggleable toggleable = new GameObject.Toggleable();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("isActive"))
+                toggleable.isActive = readBoolean(in);
+            else
+                in.skipValue();
+        }
+        in.endObject();
+        return toggleable;
+    }
+
+    /**
+     * Read an object of the form {"color": {...}}, and return the color.
+     */
+    private static GameObject.Color readColorField(JsonReader in) throws IOException {
+        GameObject.Color color = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("color"))
+                color = readColor(in);
+            else
+                in.skipValue();
+        }
+        in.endObject();
+        return color;
+    }
+
+    private static GameObject.Color readColor(JsonReader in) throws IOException {
+        if (nextIsNull(in))
+            return null;
+        GameObject.Color color = new GameObject.Color();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "r":
+                color.r = (float) in.nextDouble();
+                break;
+            case "g":
+                color.g = (float) in.nextDouble();
+                break;
+            case "b":
+                color.b = (float) in.nextDouble();
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return color;
+    }
+
+    // ========================================================================
+    // Writing
+    // ========================================================================
+
+    private static void writeFloat(JsonWriter out, float f) throws IOException {
+        // written through Float.toString, just as the reflective adapter does:
+        out.value((Number) f);
+    }
+
+    private static void writeNullableFloat(JsonWriter out, Float f) throws IOException {
+        if (f == null)
+            out.nullValue();
+        else
+            out.value(f);
+    }
+
+    private static void writeNullableBoolean(JsonWriter out, Boolean b) throws IOException {
+        if (b == null)
+            out.nullValue();
+        else
+            out.value(b.booleanValue());
+    }
+
+    static void writeVec3(JsonWriter out, Vec3 v) throws IOException {
+        if (v == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("x");
+        writeFloat(out, v.x);
+        out.name("y");
+        writeFloat(out, v.y);
+        out.name("z");
+        writeFloat(out, v.z);
+        out.endObject();
+    }
+
+    static void writeObservation(JsonWriter out, Observation obs) throws IOException {
+        if (obs == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("agent");
+        if (obs.agent == null) {
+            out.nullValue();
+        } else {
+            Observation.Agent agent = obs.agent;
+            out.beginObject();
+            out.name("id").value(agent.id);
+            out.name("position");
+            writeVec3(out, agent.position);
+            out.name("velocity");
+            writeVec3(out, agent.velocity);
+            out.name("didNothing");
+            writeNullableBoolean(out, agent.didNothing);
+            out.name("health").value(agent.health);
+            out.name("score").value(agent.score);
+            out.name("mood").value(agent.mood);
+            out.endObject();
+        }
+        out.name("meta");
+        if (obs.meta == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("tick").value(obs.meta.tick);
+            out.name("time").value(obs.meta.time);
+            out.endObject();
+        }
+        out.name("objects");
+        if (obs.objects == null) {
+            out.nullValue();
+        } else {
+            out.beginArray();
+            for (GameObject obj : obs.objects)
+                writeGameObject(out, obj);
+            out.endArray();
+        }
+        out.name("navMeshIndices");
+        if (obs.navMeshIndices == null) {
+            out.nullValue();
+        } else {
+            out.beginArray();
+            for (int i : obs.navMeshIndices)
+                out.value(i);
+            out.endArray();
+        }
+        out.name("delta").value(obs.delta);
+        out.name("removed");
+        if (obs.removed == null) {
+            out.nullValue();
+        } else {
+            out.beginArray();
+            for (String id : obs.removed)
+                out.value(id);
+            out.endArray();
+        }
+        out.endObject();
+    }
+
+    static void writeGameObject(JsonWriter out, GameObject obj) throws IOException {
+        if (obj == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("name").value(obj.name);
+        out.name("tag").value(obj.tag);
+        out.name("id").value(obj.id);
+        out.name("colliders");
+        if (obj.colliders == null) {
+            out.nullValue();
+        } else {
+            out.beginArray();
+            for (GameObject.Collider c : obj.colliders) {
+                if (c == null) {
+                    out.nullValue();
+                    continue;
+                }
+                out.beginObject();
+                out.name("center");
+                writeVec3(out, c.center);
+                out.name("size");
+                writeVec3(out, c.size);
+                out.endObject();
+            }
+            out.endArray();
+        }
+        out.name("transform");
+        if (obj.transform == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("position");
+            writeVec3(out, obj.transform.position);
+            out.name("rotation");
+            writeVec3(out, obj.transform.rotation);
+            out.name("velocity");
+            writeVec3(out, obj.transform.velocity);
+            out.endObject();
+        }
+        out.name("Interactable");
+        if (obj.Interactable == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("interactable");
+            writeNullableBoolean(out, obj.Interactable.interactable);
+            out.name("interactionCooldown");
+            writeNullableFloat(out, obj.Interactable.interactionCooldown);
+            out.name("timeSinceInteraction");
+            writeNullableFloat(out, obj.Interactable.timeSinceInteraction);
+            out.endObject();
+        }
+        out.name("Colorized");
+        if (obj.Colorized == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("color");
+            writeColor(out, obj.Colorized.color);
+            out.endObject();
+        }
+        out.name("ColorScreen");
+        if (obj.ColorScreen == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("color");
+            writeColor(out, obj.ColorScreen.color);
+            out.endObject();
+        }
+        out.name("Toggleable");
+        if (obj.Toggleable == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.name("isActive");
+            writeNullableBoolean(out, obj.Toggleable.isActive);
+            out.endObject();
+        }
+        out.name("FireHazard");
+        if (obj.FireHazard == null) {
+            out.nullValue();
+        } else {
+            out.beginObject();
+            out.endObject();
+        }
+        out.endObject();
+    }
+
+    private static void writeColor(JsonWriter out, GameObject.Color color) throws IOException {
+        if (color == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("r");
+        writeFloat(out, color.r);
+        out.name("g");
+        writeFloat(out, color.g);
+        out.name("b");
+        writeFloat(out, color.b);
+        out.endObject();
+    }
+
+    /**
+     * Write a {@link Request}, {@link AgentCommand} or {@link LegacyTuple}.
+     */
+    private static void writeCommandObject(Gson gson, JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Request) {
+            Request<?> request = (Request<?>) value;
+            out.beginObject();
+            out.name("cmd");
+            writeEnum(out, request.cmd);
+            out.name("arg");
+            writeArgument(gson, out, request.arg);
+            out.endObject();
+        } else if (value instanceof AgentCommand) {
+            AgentCommand command = (AgentCommand) value;
+            out.beginObject();
+            out.name("cmd");
+            writeEnum(out, command.cmd);
+            out.name("agentId").value(command.agentId);
+            out.name("targetId").value(command.targetId);
+            out.name("arg");
+            writeArgument(gson, out, command.arg);
+            out.endObject();
+        } else {
+            LegacyTuple<?, ?> tuple = (LegacyTuple<?, ?>) value;
+            out.beginObject();
+            out.name("object1");
+            writeArgument(gson, out, tuple.object1);
+            out.name("object2");
+            writeArgument(gson, out, tuple.object2);
+            out.endObject();
+        }
+    }
+
+    private static void writeEnum(JsonWriter out, Enum<?> value) throws IOException {
+        if (value == null)
+            out.nullValue();
+        else
+            out.value(value.name());
+    }
+
+    /**
+     * Write an argument whose type is only known at runtime, as Gson would do for
+     * a field of type Object.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static void writeArgument(Gson gson, JsonWriter out, Object arg) throws IOException {
+        if (arg == null) {
+            out.nullValue();
+        } else if (arg instanceof AgentCommand || arg instanceof LegacyTuple) {
+            writeCommandObject(gson, out, arg);
+        } else if (arg instanceof Vec3) {
+            writeVec3(out, (Vec3) arg);
+        } else if (arg instanceof Boolean) {
+            out.value(((Boolean) arg).booleanValue());
+        } else if (arg instanceof List) {
+            out.beginArray();
+            for (Object element : (List<?>) arg)
+                writeArgument(gson, out, element);
+            out.endArray();
+        } else {
+            TypeAdapter adapter = gson.getAdapter(arg.getClass());
+            adapter.write(out, arg);
+        }
+    }
+}
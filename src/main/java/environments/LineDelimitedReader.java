@@ -0,0 +1,173 @@
+package environments;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A buffered reader for a stream of newline-delimited messages. Next to
+ * reading whole lines as Strings, it can also act as a {@link Reader} over just
+ * the current line: it then reports end-of-stream when it hits the line
+ * delimiter. This lets a parser consume a line directly from the stream,
+ * without first copying the line into a String, and without reading into the
+ * next line.
+ */
+class LineDelimitedReader extends Reader {
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfLine = false;
+
+    // the number of bytes, in UTF-8, of the chars before counted in the buffer,
+    // including those of earlier fills; see consumed()
+    private long bytesCounted = 0;
+    private int counted = 0;
+
+    LineDelimitedReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next line, without the line terminator. Return null if the end of
+     * the stream is reached without reading any char.
+     */
+    String readLine() throws IOException {
+        StringBuilder line = null;
+        while (true) {
+            if (position >= limit && !fill()) {
+                return line == null ? null : stripCR(line.toString());
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n')
+                position++;
+            if (position < limit) {
+                // found the line terminator
+                String s;
+                if (line == null) {
+                    s = new String(buffer, start, position - start);
+                } else {
+                    s = line.append(buffer, start, position - start).toString();
+                }
+                position++;
+                return stripCR(s);
+            }
+            if (line == null)
+                line = new StringBuilder(2 * (limit - start));
+            line.append(buffer, start, limit - start);
+        }
+    }
+
+    /**
+     * Start reading a new line through the {@link Reader} interface of this
+     * reader.
+     */
+    void startLine() {
+        endOfLine = false;
+    }
+
+    /**
+     * Skip the remaining chars of the current line, including its terminator.
+     * Return false if the end of the stream is reached before the terminator.
+     */
+    boolean skipRestOfLine() throws IOException {
+        while (!endOfLine) {
+            if (position >= limit && !fill())
+                return false;
+            while (position < limit && buffer[position] != '\n')
+                position++;
+            if (position < limit) {
+                position++;
+                endOfLine = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read chars from the current line. This returns -1 when the end of the line
+     * (or the stream) is reached.
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (endOfLine || len == 0)
+            return endOfLine ? -1 : 0;
+        if (position >= limit && !fill())
+            return -1;
+        int n = 0;
+        while (n < len && position < limit) {
+            char c = buffer[position++];
+            if (c == '\n') {
+                endOfLine = true;
+                break;
+            }
+            cbuf[off + n] = c;
+            n++;
+        }
+        return n == 0 && endOfLine ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Block until some input is available, or the stream has ended.
+     */
+    void awaitInput() throws IOException {
+        if (position >= limit)
+            fill();
+    }
+
+    /**
+     * The number of bytes, in UTF-8 (the encoding of the protocol), of the chars
+     * consumed from this reader so far.
+     */
+    long consumed() {
+        bytesCounted += utf8Length(buffer, counted, position);
+        counted = position;
+        return bytesCounted;
+    }
+
+    private boolean fill() throws IOException {
+        // everything in the buffer has been consumed:
+        bytesCounted += utf8Length(buffer, counted, limit);
+        counted = 0;
+        position = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0)
+            return false;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * The number of bytes the chars from-to take in UTF-8. Each half of a
+     * surrogate pair counts for 2 bytes, so that the pair counts for 4.
+     */
+    static long utf8Length(char[] chars, int from, int to) {
+        long bytes = to - from;
+        for (int i = from; i < to; i++) {
+            char c = chars[i];
+            if (c >= 0x80)
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+        }
+        return bytes;
+    }
+
+    static long utf8Length(CharSequence s) {
+        long bytes = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80)
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+        }
+        return bytes;
+    }
+
+    private static String stripCR(String s) {
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
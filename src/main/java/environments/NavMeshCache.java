@@ -0,0 +1,175 @@
+package environments;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+import helperclasses.PrintColor;
+import world.FlatNavMesh;
+
+/**
+ * A cache on disk of the navigation meshes of levels, so that loading the same
+ * level again does not need to parse, fix and convert the mesh sent by the
+ * game. A mesh is stored under a hash of the level's csv file and of the
+ * configuration fields that can influence it. So, when the level file changes,
+ * the old entry is simply no longer used.
+ *
+ * A mesh is stored in the compact binary format of {@link FlatNavMesh}. If the
+ * configuration asks for {@link LabRecruitsConfig#navmesh_off_heap}, the
+ * cached file is memory-mapped rather than read, and all environments in the
+ * JVM that load the same level share that one mapping.
+ */
+public class NavMeshCache {
+
+    // the mapped meshes, shared by all caches; a file never changes its content
+    // once written, as its name includes the hash of the level
+    private static final Map<Path, FlatNavMesh> mapped = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    public NavMeshCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The key under which the mesh of the level of the given configuration is
+     * stored, or null if the configuration does not point to a level file.
+     */
+    public static String key(LabRecruitsConfig config) throws IOException {
+        if (config.level_path == null || config.level_path.isEmpty())
+            return null;
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(Files.readAllBytes(Paths.get(config.level_path)));
+        // the fields that may influence the mesh, and the format itself:
+        digest.update(ByteBuffer.allocate(8).putInt(config.seed).putInt(FlatNavMesh.FORMAT_VERSION).array());
+        StringBuilder key = new StringBuilder(config.level_name).append('-');
+        byte[] hash = digest.digest();
+        for (int i = 0; i < 12; i++)
+            key.append(String.format("%02x", hash[i]));
+        return key.toString();
+    }
+
+    /**
+     * The file in which the mesh of the level of the given configuration is
+     * stored, or null if the configuration does not point to a level file.
+     */
+    public Path file(LabRecruitsConfig config) throws IOException {
+        String key = key(config);
+        return key == null ? null : directory.resolve(key + ".navmesh");
+    }
+
+    /**
+     * As {@link #file(LabRecruitsConfig)}, but a failure to compute the key (e.g.
+     * because the level file cannot be read) is reported, and gives null. The
+     * file can then be given to {@link #load(Path, boolean)} and
+     * {@link #store(Path, Mesh)}, so that the level file is hashed only once.
+     */
+    public Path entry(LabRecruitsConfig config) {
+        try {
+            return file(config);
+        } catch (IOException e) {
+            System.out.println(String.format("%s: cannot compute the nav-mesh cache key: %s", PrintColor.FAILURE(), e));
+            return null;
+        }
+    }
+
+    /**
+     * Return the cached mesh of the level of the given configuration, or null if
+     * there is none (or it cannot be read). If the configuration asks for an
+     * off-heap mesh, the returned mesh is a view on the memory-mapped file; see
+     * {@link FlatNavMesh#asMesh()}.
+     */
+    public Mesh load(LabRecruitsConfig config) {
+        Path file = entry(config);
+        return file == null ? null : load(file, config.navmesh_off_heap);
+    }
+
+    /**
+     * Return the mesh cached in the given file (see {@link #entry}), or null if
+     * there is none (or it cannot be read). If offHeap is true, the returned mesh
+     * is a view on the memory-mapped file; see {@link FlatNavMesh#asMesh()}.
+     */
+    public Mesh load(Path file, boolean offHeap) {
+        try {
+            if (!Files.exists(file))
+                return null;
+            if (offHeap)
+                return map(file).asMesh();
+            return readMesh(file);
+        } catch (IOException | RuntimeException e) {
+            System.out.println(String.format("%s: cannot read the cached nav-mesh: %s", PrintColor.FAILURE(), e));
+            return null;
+        }
+    }
+
+    // map the file, or return the existing mapping of it
+    private static FlatNavMesh map(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        FlatNavMesh mesh = mapped.get(file);
+        if (mesh == null) {
+            mesh = FlatNavMesh.map(file);
+            FlatNavMesh other = mapped.putIfAbsent(file, mesh);
+            if (other != null)
+                mesh = other;
+        }
+        return mesh;
+    }
+
+    /**
+     * Store the mesh of the level of the given configuration. Failing to do so is
+     * reported, but otherwise ignored.
+     */
+    public void store(LabRecruitsConfig config, Mesh mesh) {
+        Path file = entry(config);
+        if (file != null)
+            store(file, mesh);
+    }
+
+    /**
+     * Store the mesh in the given file (see {@link #entry}). Failing to do so is
+     * reported, but otherwise ignored; no partial file is left behind.
+     */
+    public void store(Path file, Mesh mesh) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory);
+            // write to a temporary file first, so that others never see a partial file:
+            tmp = Files.createTempFile(directory, "navmesh", ".tmp");
+            writeMesh(mesh, tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.out.println(String.format("%s: cannot cache the nav-mesh: %s", PrintColor.FAILURE(), e));
+        } finally {
+            // gone after a successful move:
+            if (tmp != null)
+                tmp.toFile().delete();
+        }
+    }
+
+    /**
+     * Write the mesh to the given file, in the format of {@link FlatNavMesh}.
+     */
+    public static void writeMesh(Mesh mesh, Path file) throws IOException {
+        FlatNavMesh.of(mesh).write(file);
+    }
+
+    /**
+     * Read a mesh written by {@link #writeMesh(Mesh, Path)}.
+     */
+    public static Mesh readMesh(Path file) throws IOException {
+        return FlatNavMesh.read(file).toMesh();
+    }
+}
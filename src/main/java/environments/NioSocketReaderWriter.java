@@ -0,0 +1,352 @@
+package environments;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A variant of {@link SocketReaderWriter} that talks to the system under test
+ * through a non-blocking {@link SocketChannel}. The wire format is the same:
+ * one Json document per line, or length-prefixed frames after
+ * {@link #useBinaryFraming()}.
+ *
+ * The byte buffers used for sending and receiving are direct buffers that are
+ * allocated once and reused for every message. Incoming lines are decoded into
+ * a reusable char buffer, from which Gson reads directly; so, unlike
+ * {@link SocketReaderWriter}, no intermediate String is created per received
+ * line.
+ *
+ * An instance is not thread safe; it is meant to be driven by one thread at a
+ * time (which is also how {@link LabRecruitsEnvironment} uses it).
+ */
+public class NioSocketReaderWriter extends SocketReaderWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private SocketChannel channel;
+    private Selector selector;
+    private SelectionKey key;
+
+    // received bytes; kept in "read mode" (flipped) in between calls
+    private ByteBuffer inBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    // the decoded chars of the last received line; grows if a line does not fit
+    private CharBuffer lineChars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder jsonOut = new StringBuilder(1024);
+
+    // the number of bytes of the last line read, including its terminator
+    private long lineBytes;
+
+    // see setTimeout; 0 means waiting for the channel without a time-out
+    private long timeoutMillis = 0;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * Constructor. Will setup a socket-channel to communicate with the given host
+     * at the given port.
+     */
+    public NioSocketReaderWriter(String host, int port) {
+        this(host, port, new ConnectStrategy());
+    }
+
+    /**
+     * Constructor. Will setup a socket-channel to communicate with the given host
+     * at the given port, connecting as the given strategy says.
+     */
+    public NioSocketReaderWriter(String host, int port, ConnectStrategy strategy) {
+        super();
+        inBuffer.flip();
+        connect(host, port, strategy, () -> {
+            SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+            ch.configureBlocking(false);
+            selector = Selector.open();
+            key = ch.register(selector, SelectionKey.OP_READ);
+            channel = ch;
+            return true;
+        });
+    }
+
+    /**
+     * Send an object to the system under test. The object is serialized to Json,
+     * and then encoded straight into a reused direct buffer.
+     */
+    @Override
+    public void write(Object packageToSend) {
+        long t0 = System.nanoTime();
+        jsonOut.setLength(0);
+        gson.toJson(packageToSend, jsonOut);
+        long t1 = System.nanoTime();
+        lastIo.serializeNanos = t1 - t0;
+        if (debug) {
+            System.out.println("** SENDING: " + jsonOut);
+        }
+        if (binaryFraming) {
+            writeFrame();
+            lastIo.writeNanos = System.nanoTime() - t1;
+            return;
+        }
+        jsonOut.append('\n');
+        lastIo.bytesOut = LineDelimitedReader.utf8Length(jsonOut);
+
+        CharBuffer chars = CharBuffer.wrap(jsonOut);
+        encoder.reset();
+        outBuffer.clear();
+        try {
+            while (encoder.encode(chars, outBuffer, true).isOverflow())
+                flushOutBuffer();
+            while (encoder.flush(outBuffer).isOverflow())
+                flushOutBuffer();
+            flushOutBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lastIo.writeNanos = System.nanoTime() - t1;
+    }
+
+    /**
+     * Read an object that was sent by the system under test. The received line is
+     * decoded into a reused char buffer, which Gson then parses into an instance
+     * of the given class. Return null if the connection was closed.
+     */
+    @Override
+    public <T> T read(Class<T> expectedClassOfResultObj) throws IOException {
+        long t0 = System.nanoTime();
+        if (binaryFraming) {
+            if (!ensureAvailable(4))
+                return null;
+            int frameLength = inBuffer.getInt();
+            if (!ensureAvailable(frameLength))
+                return null;
+            ByteBuffer frame = inBuffer.slice();
+            frame.limit(frameLength);
+            inBuffer.position(inBuffer.position() + frameLength);
+            long t1 = System.nanoTime();
+            T result = decodeFrame(frame, expectedClassOfResultObj);
+            recordRead(t0, t1, frameLength + 4);
+            return result;
+        }
+        int length = readLine();
+        if (length < 0)
+            return null;
+        long t1 = System.nanoTime();
+        if (debug) {
+            System.out.println("** RECEIVING: " + new String(lineChars.array(), 0, length));
+        }
+        T result = gson.fromJson(new CharArrayReader(lineChars.array(), 0, length), expectedClassOfResultObj);
+        recordRead(t0, t1, lineBytes);
+        return result;
+    }
+
+    private void recordRead(long start, long received, long bytes) {
+        lastIo.waitNanos = received - start;
+        lastIo.deserializeNanos = System.nanoTime() - received;
+        lastIo.bytesIn = bytes;
+    }
+
+    /**
+     * Read the next response, and throw it away without parsing it.
+     */
+    @Override
+    public boolean skip() throws IOException {
+        long t0 = System.nanoTime();
+        if (binaryFraming) {
+            if (!ensureAvailable(4))
+                return false;
+            int frameLength = inBuffer.getInt();
+            if (!ensureAvailable(frameLength))
+                return false;
+            inBuffer.position(inBuffer.position() + frameLength);
+            recordRead(t0, System.nanoTime(), frameLength + 4);
+            return true;
+        }
+        int length = readLine();
+        if (length < 0)
+            return false;
+        recordRead(t0, System.nanoTime(), lineBytes);
+        return true;
+    }
+
+    /**
+     * Switch to the length-prefixed framing. See
+     * {@link SocketReaderWriter#useBinaryFraming()}.
+     */
+    @Override
+    public void useBinaryFraming() {
+        binaryFraming = true;
+    }
+
+    /**
+     * Close the channel, and drop whatever was received on it.
+     */
+    @Override
+    protected void closeConnection() throws IOException {
+        if (selector != null)
+            selector.close();
+        if (channel != null)
+            channel.close();
+        inBuffer.clear();
+        inBuffer.flip();
+    }
+
+    /**
+     * See {@link SocketReaderWriter#setTimeout(long)}.
+     */
+    @Override
+    protected void setTimeout(long millis) {
+        timeoutMillis = millis;
+    }
+
+    /**
+     * Decode the next line from the channel into lineChars. Return the number of
+     * chars in the line (excluding the line terminator), or -1 if the channel is
+     * closed before a complete line is received.
+     */
+    private int readLine() throws IOException {
+        lineChars.clear();
+        decoder.reset();
+        lineBytes = 0;
+        while (true) {
+            int newline = indexOfNewline();
+            if (newline >= 0) {
+                lineBytes += newline + 1 - inBuffer.position();
+                int limit = inBuffer.limit();
+                inBuffer.limit(newline);
+                decode(true);
+                inBuffer.limit(limit);
+                inBuffer.position(newline + 1);
+                while (decoder.flush(lineChars).isOverflow())
+                    growLineChars();
+                int length = lineChars.position();
+                if (length > 0 && lineChars.get(length - 1) == '\r')
+                    length--;
+                return length;
+            }
+            // no complete line yet; decode what we have so far (an incomplete
+            // multi-byte char stays in the buffer), and wait for more bytes:
+            int decoded = inBuffer.position();
+            decode(false);
+            lineBytes += inBuffer.position() - decoded;
+            inBuffer.compact();
+            int n = fill();
+            inBuffer.flip();
+            if (n < 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Send the json in jsonOut as a frame.
+     */
+    private void writeFrame() {
+        byte[] payload = jsonOut.toString().getBytes(StandardCharsets.UTF_8);
+        lastIo.bytesOut = payload.length + 5;
+        outBuffer.clear();
+        outBuffer.putInt(payload.length + 1);
+        outBuffer.put(FRAME_JSON);
+        try {
+            int offset = 0;
+            while (offset < payload.length) {
+                int n = Math.min(outBuffer.remaining(), payload.length - offset);
+                outBuffer.put(payload, offset, n);
+                offset += n;
+                if (offset < payload.length)
+                    flushOutBuffer();
+            }
+            flushOutBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Make sure that at least n bytes are available in inBuffer, waiting for them
+     * if necessary. Return false if the channel is closed before that.
+     */
+    private boolean ensureAvailable(int n) throws IOException {
+        while (inBuffer.remaining() < n) {
+            if (inBuffer.capacity() < n) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(n, 2 * inBuffer.capacity()));
+                bigger.put(inBuffer);
+                inBuffer = bigger;
+            } else {
+                inBuffer.compact();
+            }
+            int r = fill();
+            inBuffer.flip();
+            if (r < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private int indexOfNewline() {
+        for (int i = inBuffer.position(); i < inBuffer.limit(); i++) {
+            // '\n' never occurs inside a multi-byte UTF-8 sequence
+            if (inBuffer.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    private void decode(boolean endOfInput) {
+        while (decoder.decode(inBuffer, lineChars, endOfInput).isOverflow())
+            growLineChars();
+    }
+
+    private void growLineChars() {
+        CharBuffer bigger = CharBuffer.allocate(lineChars.capacity() * 2);
+        lineChars.flip();
+        bigger.put(lineChars);
+        lineChars = bigger;
+    }
+
+    /**
+     * Read at least one byte from the channel into inBuffer (which must be in
+     * "write mode"), waiting for it if necessary. Return -1 if the channel is
+     * closed.
+     */
+    private int fill() throws IOException {
+        int n;
+        while ((n = channel.read(inBuffer)) == 0)
+            await(SelectionKey.OP_READ);
+        return n;
+    }
+
+    private void flushOutBuffer() throws IOException {
+        outBuffer.flip();
+        while (outBuffer.hasRemaining()) {
+            if (channel.write(outBuffer) == 0)
+                await(SelectionKey.OP_WRITE);
+        }
+        outBuffer.clear();
+    }
+
+    private void await(int operation) throws IOException {
+        key.interestOps(operation);
+        if (timeoutMillis <= 0) {
+            selector.select();
+        } else {
+            long deadline = System.nanoTime() + timeoutMillis * 1000000;
+            while (selector.select(Math.max(1, (deadline - System.nanoTime()) / 1000000)) == 0) {
+                if (System.nanoTime() >= deadline)
+                    throw new SocketTimeoutException("Timed out after " + timeoutMillis + " ms");
+            }
+        }
+        selector.selectedKeys().clear();
+    }
+}
@@ -0,0 +1,114 @@
+package environments;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the communication between
+ * {@link LabRecruitsEnvironment} and the game, so that a recording shows the
+ * game steps next to GC pauses and CPU samples. The events are disabled unless
+ * a recording enables them. Every event type has a start() that returns a
+ * begun event, or null if the type is disabled, so that a disabled event costs
+ * a check, and is not allocated.
+ */
+public class ProtocolEvents {
+
+    @Name("jlabgym.RequestSent")
+    @Label("Request Sent")
+    @Category({ "JLabGym", "Protocol" })
+    @Description("A request sent to the game; the duration is that of serializing and writing it.")
+    public static class RequestSent extends Event {
+        @Label("Request Type")
+        public String requestType;
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Agent Id")
+        public String agentId;
+
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+
+        private static final EventType TYPE = EventType.getEventType(RequestSent.class);
+
+        static RequestSent start() {
+            if (!TYPE.isEnabled())
+                return null;
+            var event = new RequestSent();
+            event.begin();
+            return event;
+        }
+    }
+
+    @Name("jlabgym.ObservationReceived")
+    @Label("Observation Received")
+    @Category({ "JLabGym", "Protocol" })
+    @Description("An observation received from the game; the duration is that of waiting for it and parsing it.")
+    public static class ObservationReceived extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Agent Id")
+        public String agentId;
+
+        @Label("Tick")
+        public long tick;
+
+        @Label("Objects")
+        @Description("The number of game objects in the observation.")
+        public int objectCount;
+
+        @Label("Delta")
+        public boolean delta;
+
+        @Label("Payload Size")
+        @DataAmount
+        public long bytes;
+
+        private static final EventType TYPE = EventType.getEventType(ObservationReceived.class);
+
+        static ObservationReceived start() {
+            if (!TYPE.isEnabled())
+                return null;
+            var event = new ObservationReceived();
+            event.begin();
+            return event;
+        }
+    }
+
+    @Name("jlabgym.LoadWorld")
+    @Label("Load World")
+    @Category({ "JLabGym", "Protocol" })
+    @Description("Loading a level in the game, and getting its navigation mesh.")
+    public static class LoadWorld extends Event {
+        @Label("Level")
+        public String level;
+
+        @Label("From Cache")
+        @Description("Whether the navigation mesh was taken from the nav-mesh cache.")
+        public boolean fromCache;
+
+        @Label("Vertices")
+        public int vertices;
+
+        @Label("Faces")
+        public int faces;
+
+        private static final EventType TYPE = EventType.getEventType(LoadWorld.class);
+
+        static LoadWorld start() {
+            if (!TYPE.isEnabled())
+                return null;
+            var event = new LoadWorld();
+            event.begin();
+            return event;
+        }
+    }
+}
@@ -7,6 +7,8 @@ at Utrecht University within the Software and Game project course.
 
 package environments;
 
+import java.util.List;
+
 import world.LabRecruitsRawNavMesh;
 import world.Observation;
 
@@ -27,7 +29,7 @@ public class Request<ResponseType> {
      * Keep this enum synced with Unity!
      */
     public enum RequestType {
-        DISCONNECT, PAUSE, START, INIT, UPDATE_ENVIRONMENT, AGENTCOMMAND
+        DISCONNECT, PAUSE, START, INIT, UPDATE_ENVIRONMENT, AGENTCOMMAND, AGENTCOMMANDS
     }
 
     /**
@@ -121,6 +123,16 @@ public class Request<ResponseType> {
         return new Request<>(Observation.class, RequestType.AGENTCOMMAND, command);
     }
 
+    /**
+     * Request the execution of several agent-commands, typically one for each
+     * agent, in one go. The game answers with one observation per command, in the
+     * order of the commands; each of them is read as the response to this
+     * request.
+     */
+    public static Request<Observation> commands(List<AgentCommand> commands) {
+        return new Request<>(Observation.class, RequestType.AGENTCOMMANDS, commands);
+    }
+
     /**
      * Request an update on the hazards
      */
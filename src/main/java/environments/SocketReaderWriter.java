@@ -1,17 +1,30 @@
 package environments;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.CharArrayReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Modifier;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
 
 import helperclasses.PrintColor;
+import world.Observation;
 
 /**
  * Provide a reader/writer to a socket to communicate with the system under
@@ -19,38 +32,138 @@ import helperclasses.PrintColor;
  * send and receive an object. When an object is sent, it will be serialized to
  * a Json string. Likewise, the system under test is assumed to send each
  * response object as a Json string.
+ * 
+ * Alternatively, messages can be exchanged as length-prefixed frames, see
+ * {@link #useBinaryFraming()}.
  */
 public class SocketReaderWriter {
 
     public static boolean debug = false;
 
     private Socket socket;
-    private BufferedReader reader;
+    private LineDelimitedReader reader;
     private PrintWriter writer;
 
+    /**
+     * If true, responses are parsed straight from the socket stream, rather than
+     * first reading the whole response line into a String.
+     */
+    private boolean streaming = false;
+
+    /**
+     * If true, messages are sent and received as length-prefixed frames rather
+     * than as lines of json. See {@link #useBinaryFraming()}.
+     */
+    protected boolean binaryFraming = false;
+    private DataInputStream frameIn;
+    private DataOutputStream frameOut;
+    private byte[] frameBuffer;
+
+    private float timeToReadyMillis = -1;
+    private int connectAttempts = 0;
+
+    /**
+     * How long the phases of the last write and of the last read took, in
+     * nanoseconds, and how many bytes they transferred. The bytes are those on
+     * the wire: the UTF-8 bytes of a json line, including its terminator, or the
+     * whole of a frame, including its length.
+     */
+    public static class IoTimes {
+        /** Converting the last sent object to json. */
+        public long serializeNanos;
+        /** Sending the last json to the socket. */
+        public long writeNanos;
+        public long bytesOut;
+        /**
+         * Waiting for the last response: until it is fully received, or, when
+         * streaming, until its first part is received.
+         */
+        public long waitNanos;
+        /** Converting the last response to an object. */
+        public long deserializeNanos;
+        public long bytesIn;
+    }
+
+    protected final IoTimes lastIo = new IoTimes();
+
+    /**
+     * The kinds of payload a frame can carry; this is the first byte of a frame.
+     */
+    static final byte FRAME_JSON = 0, FRAME_BINARY_OBSERVATION = 1;
+
     // Configuring the json serializer/deserializer. Register custom serializers
     // here.
-    // Transient modifiers should be excluded, otherwise they will be send with json
-    private static Gson gson = new GsonBuilder().serializeNulls().excludeFieldsWithModifiers(Modifier.TRANSIENT)
-            .create();
+    // Transient modifiers should be excluded, otherwise they will be send with json.
+    static Gson gson = LabRecruitsTypeAdapters.register(new GsonBuilder().serializeNulls()
+            .excludeFieldsWithModifiers(Modifier.TRANSIENT)).create();
 
     /**
      * Constructor. Will setup the needed socket to communicate with the given host
      * at the given port.
      */
     public SocketReaderWriter(String host, int port) {
-        int maxWaitTime = 20000;
+        this(host, port, new ConnectStrategy());
+    }
+
+    /**
+     * Constructor. Will setup the needed socket to communicate with the given host
+     * at the given port, connecting as the given strategy says.
+     */
+    public SocketReaderWriter(String host, int port, ConnectStrategy strategy) {
+        connect(host, port, strategy, () -> {
+            socket = new Socket(host, port);
+            reader = new LineDelimitedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            return socketReady();
+        });
+    }
+
+    /**
+     * For subclasses that provide their own transport; they are expected to call
+     * {@link #connect(String, int, ConnectStrategy, ConnectAttempt)} themselves.
+     */
+    protected SocketReaderWriter() {
+    }
+
+    /**
+     * A single attempt to open the connection. It returns true if the connection
+     * is established.
+     */
+    protected interface ConnectAttempt {
+        boolean tryConnect() throws IOException;
+    }
+
+    /**
+     * Keep trying the given connect-attempt, as the strategy says, until it
+     * succeeds, or until we time out. Returns true if the connection is
+     * established.
+     */
+    protected boolean connect(String host, int port, ConnectStrategy strategy, ConnectAttempt attempt) {
         System.out.println(String.format("Trying to connect with %s on %s:%s (will time-out after %s seconds)",
-                PrintColor.BLUE("Unity"), host, port, maxWaitTime / 1000));
+                PrintColor.BLUE("Unity"), host, port, strategy.deadline_ms / 1000));
 
         long startTime = System.nanoTime();
+        boolean connected = false;
+        int failedAttempts = 0;
 
-        while (!socketReady() && millisElapsed(startTime) < maxWaitTime) {
+        while (true) {
             try {
-                socket = new Socket(host, port);
-                reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                writer = new PrintWriter(socket.getOutputStream(), true);
-            } catch (IOException ignored) {
+                connected = attempt.tryConnect() && (!strategy.readiness_probe
+                        || probe(attempt, strategy.deadline_ms - (long) millisElapsed(startTime)));
+            } catch (IOException | RuntimeException ignored) {
+                connected = false;
+            }
+            if (connected)
+                break;
+            failedAttempts++;
+            long remaining = strategy.deadline_ms - (long) millisElapsed(startTime);
+            if (remaining <= 0)
+                break;
+            try {
+                Thread.sleep(Math.min(remaining, strategy.backoff(failedAttempts)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
         /*
@@ -62,14 +175,94 @@ public class SocketReaderWriter {
          * e.getMessage()) ; }
          */
 
-        if (socketReady()) {
-            System.out.println(String.format("%s: Connected with %s on %s:%s", PrintColor.SUCCESS(), PrintColor.UNITY(),
-                    host, port));
+        if (connected) {
+            timeToReadyMillis = millisElapsed(startTime);
+            connectAttempts = failedAttempts + 1;
+            System.out.println(String.format("%s: Connected with %s on %s:%s, ready after %.0f ms (%d attempts)",
+                    PrintColor.SUCCESS(), PrintColor.UNITY(), host, port, timeToReadyMillis, connectAttempts));
         } else {
             System.out.println(String.format(
                     "%s: Could not establish a connection with %s, please start %s before creating a GymEnvironment.",
                     PrintColor.FAILURE(), PrintColor.UNITY(), PrintColor.UNITY()));
         }
+        return connected;
+    }
+
+    /**
+     * Check that the other side serves requests, by sending it a DISCONNECT
+     * request, which does not change the state of the game, and waiting at most
+     * timeoutMillis for the answer. The probed connection is then closed, and, if
+     * the answer was proper, the connection is opened again with the given
+     * attempt. Returns true if that succeeds.
+     */
+    private boolean probe(ConnectAttempt attempt, long timeoutMillis) {
+        boolean ready = false;
+        try {
+            setTimeout(Math.max(1, timeoutMillis));
+            write(Request.disconnect());
+            ready = Boolean.TRUE.equals(read(Boolean.class));
+        } catch (IOException | RuntimeException e) {
+            // not ready
+        }
+        try {
+            closeConnection();
+            return ready && attempt.tryConnect();
+        } catch (IOException | RuntimeException e) {
+            return false;
+        } finally {
+            try {
+                setTimeout(0);
+            } catch (IOException e) {
+                // the connection is gone; the next attempt makes a new one
+            }
+        }
+    }
+
+    /**
+     * Check, quietly, that a game listens at the given host and port, and serves
+     * requests: connect, send a DISCONNECT request, and wait at most timeoutMillis
+     * for the game to answer it. This does not change the state of the game.
+     */
+    public static boolean isServing(String host, int port, long timeoutMillis) {
+        try (Socket socket = new Socket()) {
+            int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeoutMillis));
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+            var out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            out.println(gson.toJson(Request.disconnect()));
+            var in = new LineDelimitedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String answer = in.readLine();
+            return answer != null && Boolean.TRUE.equals(gson.fromJson(answer, Boolean.class));
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Let reads (and writes) on the connection fail with a
+     * {@link java.net.SocketTimeoutException} when they take more than the given
+     * time, in ms; 0 means no time-out.
+     */
+    protected void setTimeout(long millis) throws IOException {
+        if (socket != null)
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, millis));
+    }
+
+    /**
+     * The time, in ms, from the first connection attempt to the connection being
+     * established (and the readiness probe answered, if used); -1 if there is no
+     * connection.
+     */
+    public float timeToReadyMillis() {
+        return timeToReadyMillis;
+    }
+
+    /**
+     * The number of connection attempts it took to connect; 0 if there is no
+     * connection.
+     */
+    public int connectAttempts() {
+        return connectAttempts;
     }
 
     /**
@@ -93,11 +286,37 @@ public class SocketReaderWriter {
      * handle the object.
      */
     public void write(Object packageToSend) {
+        long t0 = System.nanoTime();
         String json = gson.toJson(packageToSend);
+        long t1 = System.nanoTime();
         if (debug) {
             System.out.println("** SENDING: " + json);
         }
-        writer.println(json);
+        if (binaryFraming) {
+            try {
+                byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+                frameOut.writeInt(payload.length + 1);
+                frameOut.writeByte(FRAME_JSON);
+                frameOut.write(payload);
+                frameOut.flush();
+                lastIo.bytesOut = payload.length + 5;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            writer.println(json);
+            lastIo.bytesOut = LineDelimitedReader.utf8Length(json) + System.lineSeparator().length();
+        }
+        lastIo.serializeNanos = t1 - t0;
+        lastIo.writeNanos = System.nanoTime() - t1;
+    }
+
+    /**
+     * The durations and sizes of the last write and the last read. The returned
+     * object is reused by later writes and reads.
+     */
+    public IoTimes lastIo() {
+        return lastIo;
     }
 
     /**
@@ -105,16 +324,154 @@ public class SocketReaderWriter {
      * received as a json string, which is then converted into an instance of the
      * given class. It is assumed that the json deserializer knows how to do this.
      * The resulting object is then returned.
+     * 
+     * In the streaming mode (see {@link #setStreaming(boolean)}) the object is
+     * parsed directly from the socket stream, up to the line delimiter, so the
+     * full json text is never held in memory.
      */
     public <T> T read(Class<T> expectedClassOfResultObj) throws IOException {
-
+        if (binaryFraming) {
+            return readFrame(expectedClassOfResultObj);
+        }
+        if (streaming) {
+            return readStreaming(expectedClassOfResultObj);
+        }
+        long t0 = System.nanoTime();
+        long consumed = reader.consumed();
         String response = reader.readLine();
+        long t1 = System.nanoTime();
+        lastIo.bytesIn = reader.consumed() - consumed;
         // we do not have to cast to T, since req.responseType is of type Class<T>
         if (debug) {
             System.out.println("** RECEIVING: " + response);
         }
         // return null ;
-        return gson.fromJson(response, expectedClassOfResultObj);
+        T result = gson.fromJson(response, expectedClassOfResultObj);
+        lastIo.waitNanos = t1 - t0;
+        lastIo.deserializeNanos = System.nanoTime() - t1;
+        return result;
+    }
+
+    /**
+     * Read the next response, and throw it away without parsing it. Return false
+     * if the connection was closed before a whole response was read.
+     */
+    public boolean skip() throws IOException {
+        long t0 = System.nanoTime();
+        boolean complete = true;
+        if (binaryFraming) {
+            try {
+                int length = frameIn.readInt();
+                if (frameBuffer == null || frameBuffer.length < length)
+                    frameBuffer = new byte[Math.max(length, 64 * 1024)];
+                frameIn.readFully(frameBuffer, 0, length);
+                lastIo.bytesIn = length + 4;
+            } catch (EOFException e) {
+                complete = false;
+            }
+        } else {
+            long consumed = reader.consumed();
+            reader.startLine();
+            complete = reader.skipRestOfLine();
+            lastIo.bytesIn = reader.consumed() - consumed;
+        }
+        lastIo.waitNanos = System.nanoTime() - t0;
+        lastIo.deserializeNanos = 0;
+        return complete;
+    }
+
+    private <T> T readStreaming(Class<T> expectedClassOfResultObj) throws IOException {
+        long t0 = System.nanoTime();
+        long consumed = reader.consumed();
+        reader.awaitInput();
+        long t1 = System.nanoTime();
+        reader.startLine();
+        T result = gson.fromJson(new JsonReader(reader), expectedClassOfResultObj);
+        // drop whatever trails the json value, up to and including the delimiter:
+        reader.skipRestOfLine();
+        lastIo.waitNanos = t1 - t0;
+        lastIo.deserializeNanos = System.nanoTime() - t1;
+        lastIo.bytesIn = reader.consumed() - consumed;
+        if (debug) {
+            System.out.println("** RECEIVING (streamed): " + gson.toJson(result));
+        }
+        return result;
+    }
+
+    private <T> T readFrame(Class<T> expectedClassOfResultObj) throws IOException {
+        long t0 = System.nanoTime();
+        int length;
+        try {
+            length = frameIn.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (frameBuffer == null || frameBuffer.length < length)
+            frameBuffer = new byte[Math.max(length, 64 * 1024)];
+        frameIn.readFully(frameBuffer, 0, length);
+        long t1 = System.nanoTime();
+        T result = decodeFrame(ByteBuffer.wrap(frameBuffer, 0, length), expectedClassOfResultObj);
+        lastIo.waitNanos = t1 - t0;
+        lastIo.deserializeNanos = System.nanoTime() - t1;
+        lastIo.bytesIn = length + 4;
+        return result;
+    }
+
+    /**
+     * Decode the payload of a frame (the bytes after its length-prefix) into an
+     * instance of the given class.
+     */
+    static <T> T decodeFrame(ByteBuffer frame, Class<T> expectedClassOfResultObj) throws IOException {
+        byte kind = frame.get();
+        if (kind == FRAME_BINARY_OBSERVATION) {
+            if (expectedClassOfResultObj != Observation.class)
+                throw new IOException("Received an observation where a "
+                        + expectedClassOfResultObj.getSimpleName() + " was expected.");
+            Observation obs = BinaryObservationCodec.decode(frame);
+            if (debug) {
+                System.out.println("** RECEIVING (binary): " + gson.toJson(obs));
+            }
+            return expectedClassOfResultObj.cast(obs);
+        }
+        CharBuffer json = StandardCharsets.UTF_8.decode(frame);
+        if (debug) {
+            System.out.println("** RECEIVING: " + json);
+        }
+        return gson.fromJson(new CharArrayReader(json.array(), json.arrayOffset() + json.position(), json.remaining()),
+                expectedClassOfResultObj);
+    }
+
+    /**
+     * Switch to the length-prefixed framing: from now on, every message is sent
+     * and received as a frame consisting of a 4-byte length, followed by one byte
+     * indicating the kind of payload, followed by the payload. The payload is
+     * either json or a binary encoded observation (see
+     * {@link BinaryObservationCodec}). Requests are always sent as json.
+     * 
+     * This should only be called when no response is pending, and the other side
+     * should make the same switch at the same point. There is no switching back:
+     * the framing is kept for the rest of the connection, for all requests,
+     * including INIT.
+     */
+    public void useBinaryFraming() throws IOException {
+        frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        binaryFraming = true;
+    }
+
+    /**
+     * True if the length-prefixed framing is used.
+     */
+    public boolean usesBinaryFraming() {
+        return binaryFraming;
+    }
+
+    /**
+     * Turn on/off the streaming mode of {@link #read(Class)}. This is off by
+     * default.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
     }
 
     /**
@@ -123,12 +480,19 @@ public class SocketReaderWriter {
      * @throws IOException
      */
     public void close() throws IOException {
+        closeConnection();
+        System.out.println(String.format("%s: Disconnected from the host", PrintColor.SUCCESS()));
+    }
+
+    /**
+     * Close the connection, without reporting it.
+     */
+    protected void closeConnection() throws IOException {
         if (reader != null)
             reader.close();
         if (writer != null)
             writer.close();
         if (socket != null)
             socket.close();
-        System.out.println(String.format("%s: Disconnected from the host", PrintColor.SUCCESS()));
     }
 }
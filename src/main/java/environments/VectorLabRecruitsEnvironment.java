@@ -0,0 +1,292 @@
+package environments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import eu.iv4xr.framework.exception.Iv4xrError;
+import game.LabRecruitsSimulator;
+import game.LabRecruitsTestServer;
+import helperclasses.PrintColor;
+import world.LabWorldModel;
+
+/**
+ * A vector of Lab Recruits environments, one per game instance, stepping in
+ * lockstep: {@link #step(AgentCommand[])} sends one agent-command to every
+ * instance, and returns the observations of all of them. The instances are
+ * served concurrently, each by its own thread, so that a step takes about as
+ * long as the slowest instance rather than the sum of them all.
+ *
+ * If an episode-end condition is given, an instance whose observation meets it
+ * is reset, by loading its level again, right after the step; see
+ * {@link #done()}.
+ *
+ * The instances are either started by this class (see
+ * {@link #launch(int, boolean, String, int, Supplier, Predicate)} and
+ * {@link #simulated(int, String, Predicate)}), in which case they are closed
+ * along with it, or they are already running, and only connected to (see the
+ * constructor).
+ */
+public class VectorLabRecruitsEnvironment {
+
+    private final List<LabRecruitsEnvironment> environments = new ArrayList<>();
+
+    // what to do on close(), to stop the instances this vector started
+    private final List<Runnable> onClose = new ArrayList<>();
+
+    private final ExecutorService threads;
+
+    private final Predicate<LabWorldModel> episodeEnd;
+
+    private final boolean[] done;
+    private final int[] episodes;
+
+    /**
+     * Connect to the running Lab Recruits instances of the given configurations;
+     * each should have its own port. An instance is reset when an observation
+     * from it satisfies episodeEnd; no instance is ever reset if episodeEnd is
+     * null.
+     */
+    public VectorLabRecruitsEnvironment(List<LabRecruitsConfig> configs, Predicate<LabWorldModel> episodeEnd) {
+        this(configs.size(), configs::get, episodeEnd);
+    }
+
+    /**
+     * Start n instances, and connect to them. The start function starts the k-th
+     * instance, and returns the configuration to connect to it with. The
+     * instances are started, and connected to, concurrently. If one of them
+     * fails, the connections that were made are closed again.
+     */
+    private VectorLabRecruitsEnvironment(int n, IntFunction<LabRecruitsConfig> start,
+            Predicate<LabWorldModel> episodeEnd) {
+        this.episodeEnd = episodeEnd;
+        done = new boolean[n];
+        episodes = new int[n];
+        AtomicInteger count = new AtomicInteger();
+        threads = Executors.newFixedThreadPool(Math.max(1, n), r -> {
+            Thread t = new Thread(r, "LabRecruits-vector-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        // connecting includes loading the level, which is also done concurrently:
+        List<Callable<LabRecruitsEnvironment>> connects = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            int instance = k;
+            connects.add(() -> new LabRecruitsEnvironment(start.apply(instance)));
+        }
+        Iv4xrError failure = null;
+        try {
+            for (Future<LabRecruitsEnvironment> f : threads.invokeAll(connects)) {
+                try {
+                    environments.add(f.get());
+                } catch (ExecutionException e) {
+                    failure = failure(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new Iv4xrError("Interrupted while connecting to the instances");
+        }
+        if (failure != null) {
+            close();
+            throw failure;
+        }
+    }
+
+    /**
+     * Launch n Lab Recruits games, with the executable at binaryPath, on the ports
+     * firstPort, firstPort+1, ..., and connect to them. Every instance gets a copy
+     * of a configuration from the given supplier, with the port set; the supplier
+     * may thus return the same configuration every time. The games are stopped
+     * when this vector is closed.
+     */
+    public static VectorLabRecruitsEnvironment launch(int n, boolean useGraphics, String binaryPath, int firstPort,
+            Supplier<LabRecruitsConfig> config, Predicate<LabWorldModel> episodeEnd) {
+        List<LabRecruitsTestServer> servers = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // the games start up concurrently:
+            var vector = new VectorLabRecruitsEnvironment(n, k -> {
+                var server = new LabRecruitsTestServer(useGraphics, binaryPath, firstPort + k);
+                servers.add(server);
+                server.waitForGameToLoad();
+                LabRecruitsConfig c;
+                synchronized (config) {
+                    c = config.get().copy();
+                }
+                c.port = firstPort + k;
+                return c;
+            }, episodeEnd);
+            for (var server : servers)
+                vector.onClose.add(server::close);
+            return vector;
+        } catch (RuntimeException | Iv4xrError e) {
+            for (var server : servers)
+                server.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start n {@link LabRecruitsSimulator}s, each playing the given level from
+     * Platform.LEVEL_PATH, and connect to them. The simulators are stopped when
+     * this vector is closed.
+     */
+    public static VectorLabRecruitsEnvironment simulated(int n, String levelName,
+            Predicate<LabWorldModel> episodeEnd) {
+        List<LabRecruitsSimulator> simulators = new ArrayList<>();
+        List<LabRecruitsConfig> configs = new ArrayList<>();
+        try {
+            for (int k = 0; k < n; k++) {
+                var simulator = new LabRecruitsSimulator(0);
+                simulators.add(simulator);
+                configs.add(simulator.config(levelName));
+            }
+            var vector = new VectorLabRecruitsEnvironment(configs, episodeEnd);
+            for (var simulator : simulators)
+                vector.onClose.add(simulator::close);
+            return vector;
+        } catch (IOException | RuntimeException | Iv4xrError e) {
+            for (var simulator : simulators)
+                simulator.close();
+            throw new Iv4xrError("Fail to start the simulators: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The number of instances.
+     */
+    public int size() {
+        return environments.size();
+    }
+
+    /**
+     * The environment of the k-th instance.
+     */
+    public LabRecruitsEnvironment get(int k) {
+        return environments.get(k);
+    }
+
+    /**
+     * Send the k-th command to the k-th instance, for all instances at the same
+     * time, and return the resulting observations, in the same order. A null
+     * command leaves its instance alone, and gives a null observation.
+     *
+     * An instance whose observation ends its episode is reset after the step. The
+     * observation returned for it is the last one of the episode, and
+     * {@link #done()} is true for it until the next step.
+     *
+     * If an instance gives no observation, e.g. because its connection broke, an
+     * {@link Iv4xrError} is thrown once all instances have done their step.
+     */
+    public LabWorldModel[] step(AgentCommand[] commands) {
+        if (commands.length != size())
+            throw new IllegalArgumentException(
+                    "Expecting " + size() + " commands, one per instance, but got " + commands.length);
+        List<Callable<LabWorldModel>> steps = new ArrayList<>();
+        for (int k = 0; k < size(); k++) {
+            int instance = k;
+            steps.add(() -> stepInstance(instance, commands[instance]));
+        }
+        return invokeAll(steps).toArray(new LabWorldModel[0]);
+    }
+
+    private LabWorldModel stepInstance(int k, AgentCommand command) {
+        done[k] = false;
+        if (command == null)
+            return null;
+        var env = environments.get(k);
+        var responses = env.pipelineCommands(List.of(command));
+        var obs = responses.isEmpty() ? null : responses.get(0);
+        if (obs == null)
+            throw new Iv4xrError("Instance " + k + " gives no observation for " + command.cmd + " of " + command.agentId);
+        if (episodeEnd != null && episodeEnd.test(obs)) {
+            env.loadWorld();
+            episodes[k]++;
+            done[k] = true;
+        }
+        return obs;
+    }
+
+    /**
+     * Reset all instances, by loading their levels again.
+     */
+    public void reset() {
+        List<Callable<Boolean>> resets = new ArrayList<>();
+        for (int k = 0; k < size(); k++) {
+            int instance = k;
+            resets.add(() -> {
+                environments.get(instance).loadWorld();
+                done[instance] = false;
+                return true;
+            });
+        }
+        invokeAll(resets);
+    }
+
+    /**
+     * For every instance, whether its episode ended, and it was reset, in the
+     * last step.
+     */
+    public boolean[] done() {
+        return done.clone();
+    }
+
+    /**
+     * For every instance, the number of episodes it has finished.
+     */
+    public int[] episodes() {
+        return episodes.clone();
+    }
+
+    // run the tasks on the threads of this vector, and wait for all of them
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> f : threads.invokeAll(tasks))
+                results.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Iv4xrError("Interrupted while waiting for the instances");
+        } catch (ExecutionException e) {
+            throw failure(e);
+        }
+        return results;
+    }
+
+    private static Iv4xrError failure(ExecutionException e) {
+        System.out.println(PrintColor.FAILURE() + ": an instance failed: " + e.getCause());
+        if (e.getCause() instanceof Iv4xrError)
+            return (Iv4xrError) e.getCause();
+        return new Iv4xrError("An instance failed: " + e.getCause());
+    }
+
+    /**
+     * Close the connections to all instances, and stop the instances that this
+     * vector started.
+     */
+    public boolean close() {
+        boolean success = true;
+        for (var env : environments) {
+            try {
+                success &= env.close();
+            } catch (RuntimeException | Iv4xrError e) {
+                // the connection is broken; go on with the others
+                success = false;
+            }
+        }
+        threads.shutdown();
+        for (var stop : onClose)
+            stop.run();
+        return success;
+    }
+}
@@ -0,0 +1,25 @@
+package game;
+
+/**
+ * A running instance of the game, listening to a TCP port for a
+ * {@link environments.LabRecruitsEnvironment} to connect to. Implemented by
+ * {@link LabRecruitsTestServer}, which runs the actual game, and
+ * {@link LabRecruitsSimulator}.
+ */
+public interface GameInstance {
+
+    /**
+     * The port the instance listens to.
+     */
+    int port();
+
+    /**
+     * Whether the instance is still running.
+     */
+    boolean isRunning();
+
+    /**
+     * Stop the instance.
+     */
+    void close();
+}
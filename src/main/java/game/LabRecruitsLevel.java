@@ -0,0 +1,288 @@
+package game;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.LabRecruitsRawNavMesh;
+
+/**
+ * A Lab Recruits level, as defined by its csv file (see the levels in
+ * src/test/resources/levels). The file starts with the links between buttons
+ * and the doors/screens they control, one button per line:
+ *
+ * <pre>
+ * button0,door0,door1
+ * </pre>
+ *
+ * This is followed by the floors of the level. Each floor starts with a line
+ * beginning with "|". Every line of a floor is a row of tiles; the tile in
+ * column x and row z is centered at (x, y, z), where y is the height of the
+ * floor. A tile is described by a base, followed by the objects standing on it,
+ * separated by ":". For example "f:d>s^door0" is a floor tile with a door
+ * facing south, named door0. An object is described by its code, optionally
+ * followed by a direction (">n"), a color ("#0000ff"), and a name ("^button0").
+ *
+ * This class only reads the level; see {@link LabRecruitsSimulator} for a
+ * simulation of it.
+ */
+public class LabRecruitsLevel {
+
+    /** The kinds of tile bases. */
+    public enum Tile {
+        EMPTY, WALL, FLOOR
+    }
+
+    /**
+     * The height of a floor. Floor k of a level is placed at height k *
+     * FLOOR_HEIGHT.
+     */
+    public static final float FLOOR_HEIGHT = 4f;
+
+    // object codes:
+    public static final String AGENT = "a";
+    public static final String BUTTON = "b";
+    public static final String COLORBUTTON = "cb";
+    public static final String DOOR = "d";
+    public static final String COLORSCREEN = "cs";
+    public static final String FIRE = "dhf";
+    public static final String GOAL = "g";
+
+    /**
+     * Codes of decorations that block movement, and are therefore left out of the
+     * navigation mesh: chairs, tables, bookcases, plants and (low) walls.
+     */
+    public static final Set<String> BLOCKING_DECORATIONS = Set.of("c", "t", "bc", "p2", "w");
+
+    /**
+     * An object placed in the level.
+     */
+    public static class LevelObject {
+        /** The code of the object, e.g. "b" for a button. */
+        public String code;
+        /** The name of the object, as given in the level file, or generated. */
+        public String id;
+        public int floor;
+        public int column;
+        public int row;
+        /** The facing of the object: 'n', 'e', 's', 'w', or 0 if not given. */
+        public char direction;
+        /** The color of colored buttons, as r/g/b in [0..1]; else null. */
+        public float[] color;
+
+        /**
+         * The center of the tile the object stands on, at floor level.
+         */
+        public Vec3 position() {
+            return new Vec3(column, floor * FLOOR_HEIGHT, row);
+        }
+
+        public boolean isDecoration() {
+            switch (code) {
+            case AGENT:
+            case BUTTON:
+            case COLORBUTTON:
+            case DOOR:
+            case COLORSCREEN:
+            case FIRE:
+            case GOAL:
+                return false;
+            default:
+                return true;
+            }
+        }
+
+        /**
+         * True if the object blocks the tile it stands on permanently.
+         */
+        public boolean isStaticObstacle() {
+            return code.equals(COLORSCREEN) || (isDecoration() && BLOCKING_DECORATIONS.contains(code));
+        }
+    }
+
+    public String name;
+    /** tiles[floor][row][column] */
+    public Tile[][][] tiles;
+    public List<LevelObject> objects = new ArrayList<>();
+    /** The buttons, mapped to the names of the doors/screens they control. */
+    public Map<String, List<String>> links = new LinkedHashMap<>();
+
+    /**
+     * Read the level from the given csv file.
+     */
+    public static LabRecruitsLevel load(String path) throws IOException {
+        var level = parse(Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8));
+        level.name = Paths.get(path).getFileName().toString().replace(".csv", "");
+        return level;
+    }
+
+    /**
+     * Read a level from the lines of its csv definition.
+     */
+    public static LabRecruitsLevel parse(List<String> lines) {
+        var level = new LabRecruitsLevel();
+        List<List<String[]>> floors = new ArrayList<>();
+        List<String[]> currentFloor = null;
+        int width = 0;
+        for (String line : lines) {
+            // strip a byte order mark, if there is one:
+            line = line.replace("\uFEFF", "");
+            if (line.startsWith("|")) {
+                currentFloor = new ArrayList<>();
+                floors.add(currentFloor);
+                line = line.substring(1);
+            }
+            String[] cells = line.split(",", -1);
+            if (currentFloor == null) {
+                // a line specifying links:
+                if (cells.length == 0 || cells[0].trim().isEmpty())
+                    continue;
+                var targets = level.links.computeIfAbsent(cells[0].trim(), b -> new LinkedList<>());
+                for (int k = 1; k < cells.length; k++) {
+                    if (!cells[k].trim().isEmpty())
+                        targets.add(cells[k].trim());
+                }
+            } else {
+                currentFloor.add(cells);
+                width = Math.max(width, cells.length);
+            }
+        }
+
+        int depth = 0;
+        for (var floor : floors)
+            depth = Math.max(depth, floor.size());
+        level.tiles = new Tile[floors.size()][depth][width];
+        Map<String, Integer> counters = new HashMap<>();
+        for (int f = 0; f < floors.size(); f++) {
+            for (int z = 0; z < depth; z++) {
+                String[] row = z < floors.get(f).size() ? floors.get(f).get(z) : new String[0];
+                for (int x = 0; x < width; x++) {
+                    String cell = x < row.length ? row[x].trim() : "";
+                    String[] parts = cell.split(":");
+                    level.tiles[f][z][x] = tileOf(parts[0]);
+                    for (int k = 1; k < parts.length; k++) {
+                        if (!parts[k].isEmpty())
+                            level.objects.add(parseObject(parts[k], f, z, x, counters));
+                    }
+                }
+            }
+        }
+        return level;
+    }
+
+    private static Tile tileOf(String base) {
+        if (base.startsWith("f") || base.startsWith("r"))
+            // floors and ramps:
+            return Tile.FLOOR;
+        if (base.startsWith("w"))
+            // walls, and walls with a window:
+            return Tile.WALL;
+        // nothing, or things hanging from the ceiling:
+        return Tile.EMPTY;
+    }
+
+    private static LevelObject parseObject(String s, int floor, int row, int column, Map<String, Integer> counters) {
+        var obj = new LevelObject();
+        obj.floor = floor;
+        obj.row = row;
+        obj.column = column;
+        int k = 0;
+        while (k < s.length() && "^>#".indexOf(s.charAt(k)) < 0)
+            k++;
+        obj.code = s.substring(0, k);
+        while (k < s.length()) {
+            char marker = s.charAt(k);
+            int end = k + 1;
+            while (end < s.length() && "^>#".indexOf(s.charAt(end)) < 0)
+                end++;
+            String value = s.substring(k + 1, end);
+            switch (marker) {
+            case '^':
+                obj.id = value;
+                break;
+            case '>':
+                obj.direction = value.isEmpty() ? 0 : value.charAt(0);
+                break;
+            default:
+                int rgb = Integer.parseInt(value, 16);
+                obj.color = new float[] { (rgb >> 16 & 0xff) / 255f, (rgb >> 8 & 0xff) / 255f, (rgb & 0xff) / 255f };
+            }
+            k = end;
+        }
+        if (obj.id == null) {
+            int n = counters.merge(obj.code, 1, Integer::sum) - 1;
+            obj.id = obj.code + n;
+        }
+        return obj;
+    }
+
+    public int numberOfFloors() {
+        return tiles.length;
+    }
+
+    public int depth() {
+        return tiles.length == 0 ? 0 : tiles[0].length;
+    }
+
+    public int width() {
+        return depth() == 0 ? 0 : tiles[0][0].length;
+    }
+
+    public Tile tile(int floor, int row, int column) {
+        if (floor < 0 || floor >= numberOfFloors() || row < 0 || row >= depth() || column < 0 || column >= width())
+            return Tile.EMPTY;
+        return tiles[floor][row][column];
+    }
+
+    /**
+     * Build the navigation mesh of the level: two triangles for every floor tile
+     * that is not permanently blocked by an object. Adjacent tiles share their
+     * corners, so the mesh is connected where the floor is. Tiles with doors are
+     * included, as doors can be opened.
+     */
+    public LabRecruitsRawNavMesh navMesh() {
+        boolean[][][] blocked = new boolean[numberOfFloors()][depth()][width()];
+        for (var obj : objects) {
+            if (obj.isStaticObstacle())
+                blocked[obj.floor][obj.row][obj.column] = true;
+        }
+        List<Vec3> vertices = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        Map<Long, Integer> corners = new HashMap<>();
+        for (int f = 0; f < numberOfFloors(); f++) {
+            for (int z = 0; z < depth(); z++) {
+                for (int x = 0; x < width(); x++) {
+                    if (tiles[f][z][x] != Tile.FLOOR || blocked[f][z][x])
+                        continue;
+                    int a = corner(f, x, z, corners, vertices);
+                    int b = corner(f, x + 1, z, corners, vertices);
+                    int c = corner(f, x + 1, z + 1, corners, vertices);
+                    int d = corner(f, x, z + 1, corners, vertices);
+                    indices.addAll(List.of(a, b, c, a, c, d));
+                }
+            }
+        }
+        int[] indices_ = new int[indices.size()];
+        for (int i = 0; i < indices_.length; i++)
+            indices_[i] = indices.get(i);
+        return new LabRecruitsRawNavMesh(indices_, vertices.toArray(new Vec3[vertices.size()]));
+    }
+
+    // the index of the corner at the lower-left of tile (x,z), adding it if needed
+    private int corner(int floor, int x, int z, Map<Long, Integer> corners, List<Vec3> vertices) {
+        long key = ((long) floor * (depth() + 1) + z) * (width() + 1) + x;
+        return corners.computeIfAbsent(key, k -> {
+            vertices.add(new Vec3(x - 0.5f, floor * FLOOR_HEIGHT, z - 0.5f));
+            return vertices.size() - 1;
+        });
+    }
+}
@@ -0,0 +1,256 @@
+package game;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.IntFunction;
+
+import environments.LabRecruitsConfig;
+import environments.LabRecruitsEnvironment;
+import environments.SocketReaderWriter;
+import eu.iv4xr.framework.exception.Iv4xrError;
+import helperclasses.PrintColor;
+
+/**
+ * A pool of game instances that are started once, and then reused to play one
+ * level after another, so that the start-up time of the game is not paid for
+ * every test or run. A worker of the pool is leased with
+ * {@link #lease(LabRecruitsConfig)}, which connects to its instance and loads
+ * the level of the given configuration (with the INIT request, as any new
+ * {@link LabRecruitsEnvironment} does). When the lease is closed, the
+ * connection is closed, and the worker goes back to the pool.
+ *
+ * Before a lease, a worker's instance is checked: its process must be running,
+ * and it must answer a request (see {@link SocketReaderWriter#isServing}) within
+ * {@link #healthCheckMillis}. A worker that fails this check, or cannot load a
+ * level, is replaced by a new instance. So is a worker that has served
+ * {@link #maxEpisodesPerWorker} leases, to bound whatever state the game
+ * accumulates over time.
+ *
+ * Example:
+ *
+ * <pre>
+ * var pool = LabRecruitsServerPool.ofGames(2, false, path-to-labrecruits-executable, 8053, 50);
+ * try (var lease = pool.lease(new LabRecruitsConfig("buttons_doors_1"))) {
+ *     var env = lease.environment();
+ *     ...
+ * }
+ * pool.close();
+ * </pre>
+ */
+public class LabRecruitsServerPool {
+
+    /**
+     * A worker of the pool: a game instance, and the number of leases it served.
+     */
+    static class Worker {
+        final int index;
+        GameInstance instance;
+        int episodes = 0;
+
+        Worker(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * A leased worker, with an environment connected to its instance. Closing the
+     * lease returns the worker to the pool.
+     */
+    public class Lease implements AutoCloseable {
+        private final Worker worker;
+        private final LabRecruitsEnvironment environment;
+        private boolean released = false;
+
+        Lease(Worker worker, LabRecruitsEnvironment environment) {
+            this.worker = worker;
+            this.environment = environment;
+        }
+
+        public LabRecruitsEnvironment environment() {
+            return environment;
+        }
+
+        /**
+         * The port of the leased game instance.
+         */
+        public int port() {
+            return worker.instance.port();
+        }
+
+        /**
+         * Close the connection to the game, and give the worker back to the pool.
+         */
+        @Override
+        public void close() {
+            if (released)
+                return;
+            released = true;
+            boolean closed;
+            try {
+                closed = environment.close();
+            } catch (RuntimeException | Iv4xrError e) {
+                closed = false;
+            }
+            worker.episodes++;
+            try {
+                if (!closed)
+                    recycle(worker);
+            } finally {
+                idle.add(worker);
+            }
+        }
+    }
+
+    /**
+     * The number of leases after which a worker's instance is replaced by a new
+     * one; 0 means never.
+     */
+    public final int maxEpisodesPerWorker;
+
+    /**
+     * How long, in ms, a worker's instance may take to answer the check made
+     * before every lease; 0 means that only its process is checked. The default
+     * is 2000 ms.
+     */
+    public volatile long healthCheckMillis = 2000;
+
+    private final IntFunction<GameInstance> launcher;
+    private final List<Worker> workers = new ArrayList<>();
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private int launches = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Create a pool of the given number of workers, and start their instances
+     * right away. The launcher starts the instance of the k-th worker, and returns
+     * when it is ready to be connected to. If an instance fails to start, those
+     * started before it are stopped again.
+     */
+    public LabRecruitsServerPool(int size, int maxEpisodesPerWorker, IntFunction<GameInstance> launcher) {
+        this.maxEpisodesPerWorker = maxEpisodesPerWorker;
+        this.launcher = launcher;
+        try {
+            for (int k = 0; k < size; k++) {
+                var worker = new Worker(k);
+                worker.instance = launch(k);
+                workers.add(worker);
+                idle.add(worker);
+            }
+        } catch (RuntimeException | Iv4xrError e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * A pool of Lab Recruits games, with the executable at binaryPath, that listen
+     * to the ports firstPort, firstPort+1, ...
+     */
+    public static LabRecruitsServerPool ofGames(int size, boolean useGraphics, String binaryPath, int firstPort,
+            int maxEpisodesPerWorker) {
+        return new LabRecruitsServerPool(size, maxEpisodesPerWorker, k -> {
+            var server = new LabRecruitsTestServer(useGraphics, binaryPath, firstPort + k);
+            server.waitForGameToLoad();
+            return server;
+        });
+    }
+
+    /**
+     * A pool of {@link LabRecruitsSimulator}s.
+     */
+    public static LabRecruitsServerPool ofSimulators(int size, int maxEpisodesPerWorker) {
+        return new LabRecruitsServerPool(size, maxEpisodesPerWorker, k -> {
+            try {
+                return new LabRecruitsSimulator(0);
+            } catch (IOException e) {
+                throw new Iv4xrError("Fail to start a simulator: " + e.getMessage());
+            }
+        });
+    }
+
+    private synchronized GameInstance launch(int k) {
+        launches++;
+        return launcher.apply(k);
+    }
+
+    /**
+     * The number of workers.
+     */
+    public int size() {
+        return workers.size();
+    }
+
+    /**
+     * The number of instances started so far, including those that replaced
+     * others.
+     */
+    public synchronized int launches() {
+        return launches;
+    }
+
+    /**
+     * Wait until a worker is free, and let it load the level of the given
+     * configuration. The environment gets a copy of the configuration, with the
+     * port set to the worker's; the given configuration is left as is, so it can
+     * be used for other leases. If the worker's instance fails to load the level, it is replaced, and the new
+     * instance tries once more.
+     */
+    public Lease lease(LabRecruitsConfig config) throws InterruptedException {
+        if (closed)
+            throw new IllegalStateException("The pool is closed");
+        Worker worker = idle.take();
+        try {
+            if (!isHealthy(worker, config.host)
+                    || (maxEpisodesPerWorker > 0 && worker.episodes >= maxEpisodesPerWorker))
+                recycle(worker);
+            for (int attempt = 0;; attempt++) {
+                var workerConfig = config.copy();
+                workerConfig.port = worker.instance.port();
+                try {
+                    return new Lease(worker, new LabRecruitsEnvironment(workerConfig));
+                } catch (RuntimeException | Iv4xrError e) {
+                    System.out.println(String.format("%s: worker %d fails to load the level: %s",
+                            PrintColor.FAILURE(), worker.index, e.getMessage()));
+                    if (attempt > 0)
+                        throw e;
+                    recycle(worker);
+                }
+            }
+        } catch (RuntimeException | Iv4xrError e) {
+            // the worker is replaced on its next lease:
+            worker.instance.close();
+            idle.add(worker);
+            throw e;
+        }
+    }
+
+    // whether the worker's instance is running, and answers requests
+    private boolean isHealthy(Worker worker, String host) {
+        if (!worker.instance.isRunning())
+            return false;
+        if (healthCheckMillis <= 0 || SocketReaderWriter.isServing(host, worker.instance.port(), healthCheckMillis))
+            return true;
+        System.out.println(String.format("%s: worker %d does not answer within %d ms", PrintColor.FAILURE(),
+                worker.index, healthCheckMillis));
+        return false;
+    }
+
+    // replace the instance of the worker with a new one
+    private void recycle(Worker worker) {
+        worker.instance.close();
+        worker.instance = launch(worker.index);
+        worker.episodes = 0;
+    }
+
+    /**
+     * Stop all instances. Leases still out should not be used anymore.
+     */
+    public void close() {
+        closed = true;
+        for (var worker : workers)
+            worker.instance.close();
+    }
+}
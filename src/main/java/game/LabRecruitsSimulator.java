@@ -0,0 +1,495 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+import environments.LabRecruitsConfig;
+import environments.LabRecruitsTypeAdapters;
+import eu.iv4xr.framework.spatial.Vec3;
+import game.LabRecruitsLevel.LevelObject;
+import game.LabRecruitsLevel.Tile;
+import helperclasses.PrintColor;
+import world.LabRecruitsRawNavMesh;
+import world.Observation;
+import world.Observation.GameObject;
+
+/**
+ * A headless stand-in for the Lab Recruits game, written in plain Java. Like
+ * the game, it opens a TCP port and answers the requests of
+ * {@link environments.LabRecruitsEnvironment}: INIT loads the level named in
+ * the configuration from its csv file (see {@link LabRecruitsLevel}) and sends
+ * back its navigation mesh, and agent-commands are simulated and answered with
+ * an observation (a batch of AGENTCOMMANDS with one observation per command).
+ * So, tests can be run without the game, and the Java side can be measured
+ * without depending on the game's frame rate.
+ *
+ * The simulation is a simplification of the game. Every agent-command advances
+ * the simulation by one turn. In a turn an agent moves at most
+ * {@link #STEP_DISTANCE} toward its target, on its own floor; it is stopped by
+ * walls, closed doors, color screens and blocking decorations. Interacting with
+ * a button that is close enough toggles it, and toggles the doors linked to it;
+ * a color screen shows the combined colors of the linked colored buttons that
+ * are on. Standing in a fire costs health. An agent sees the objects and
+ * nav-mesh vertices on its floor within its view distance, if no wall or closed
+ * door is in between. Ramps, stairs and NPCs are not simulated.
+ *
+ * The simulator only speaks the json line protocol; the BINARY wire-format and
+ * delta observations are not supported.
+ */
+public class LabRecruitsSimulator implements GameInstance {
+
+    /** The distance an agent moves, at most, in one turn. */
+    public static final float STEP_DISTANCE = 1f;
+
+    /** How close an agent must be to a button to interact with it. */
+    public static final float INTERACTION_DISTANCE = 1.5f;
+
+    /** The radius of the agent's footprint, for collisions. */
+    public static final float AGENT_RADIUS = 0.2f;
+
+    /** The health an agent loses per turn when standing in a fire. */
+    public static final int FIRE_DAMAGE = 5;
+
+    static Gson gson = LabRecruitsTypeAdapters.register(new GsonBuilder().serializeNulls()).create();
+
+    /**
+     * The state of an object in the level, during the simulation.
+     */
+    static class SimObject {
+        LevelObject spec;
+        /** The id the game gives to the object (Unity's instance id). */
+        String gameId;
+        /** The state of a button or door. */
+        boolean active = false;
+        /** The color of a color screen. */
+        float[] color = { 0, 0, 0 };
+
+        Vec3 position() {
+            var p = spec.position();
+            p.y += 0.5f;
+            return p;
+        }
+    }
+
+    /**
+     * The state of an agent, during the simulation.
+     */
+    static class SimAgent {
+        String id;
+        int floor;
+        Vec3 position;
+        Vec3 velocity = Vec3.zero();
+        int health = 100;
+        int score = 0;
+    }
+
+    ServerSocket server;
+    Thread thread;
+    volatile boolean closed = false;
+
+    LabRecruitsConfig config;
+    LabRecruitsLevel level;
+    LabRecruitsRawNavMesh navMesh;
+    Map<String, SimObject> objects = new LinkedHashMap<>();
+    Map<String, SimAgent> agents = new HashMap<>();
+    int tick = 0;
+
+    // per tile, indexed [floor][row][column]: the door on it, if any, and whether
+    // it is permanently blocked by an object
+    SimObject[][][] doors;
+    boolean[][][] blocked;
+
+    /**
+     * Start a simulator, listening to the given port. If the port is 0, some free
+     * port is used; see {@link #port()}.
+     */
+    public LabRecruitsSimulator(int port) throws IOException {
+        server = new ServerSocket(port);
+        thread = new Thread(this::serve, "LabRecruitsSimulator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The port this simulator listens to.
+     */
+    @Override
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Return a configuration to use the given level from Platform.LEVEL_PATH in
+     * this simulator.
+     */
+    public LabRecruitsConfig config(String levelName) {
+        var config = new LabRecruitsConfig(levelName);
+        config.port = port();
+        return config;
+    }
+
+    // accept clients, one after another, as the game does
+    void serve() {
+        while (!closed) {
+            try (Socket client = server.accept()) {
+                var in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                var out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    var request = gson.fromJson(line, JsonObject.class);
+                    out.println(respond(request));
+                    out.flush();
+                    if (request.get("cmd").getAsString().equals("DISCONNECT"))
+                        break;
+                }
+            } catch (IOException e) {
+                if (!closed)
+                    System.out.println(PrintColor.FAILURE() + ": the simulator lost its client: " + e.getMessage());
+            }
+        }
+    }
+
+    synchronized String respond(JsonObject request) throws IOException {
+        switch (request.get("cmd").getAsString()) {
+        case "INIT":
+            init(gson.fromJson(request.get("arg"), LabRecruitsConfig.class));
+            return config.send_navmesh ? gson.toJson(navMesh) : "true";
+        case "AGENTCOMMAND":
+            return gson.toJson(step(request.getAsJsonObject("arg")));
+        case "AGENTCOMMANDS":
+            // one observation line per command:
+            var observations = new StringBuilder();
+            for (var command : request.getAsJsonArray("arg")) {
+                if (observations.length() > 0)
+                    observations.append('\n');
+                observations.append(gson.toJson(step(command.getAsJsonObject())));
+            }
+            return observations.toString();
+        default:
+            // DISCONNECT, START, PAUSE, UPDATE_ENVIRONMENT:
+            return "true";
+        }
+    }
+
+    /**
+     * Load the level of the given configuration, and reset the simulation.
+     */
+    void init(LabRecruitsConfig config) throws IOException {
+        this.config = config;
+        objects.clear();
+        agents.clear();
+        tick = 0;
+        if (config.level_path == null || config.level_path.isEmpty()) {
+            // only checking that the game is there:
+            level = LabRecruitsLevel.parse(List.of());
+            navMesh = level.navMesh();
+            return;
+        }
+        level = LabRecruitsLevel.load(config.level_path);
+        navMesh = level.navMesh();
+        doors = new SimObject[level.numberOfFloors()][level.depth()][level.width()];
+        blocked = new boolean[level.numberOfFloors()][level.depth()][level.width()];
+        for (var link : config.add_links)
+            level.links.computeIfAbsent(link.fst, b -> new ArrayList<>()).add(link.snd);
+        for (var link : config.remove_links) {
+            var targets = level.links.get(link.fst);
+            if (targets != null)
+                targets.remove(link.snd);
+        }
+        int n = 0;
+        for (var spec : level.objects) {
+            if (spec.code.equals(LabRecruitsLevel.AGENT)) {
+                var agent = new SimAgent();
+                agent.id = spec.id;
+                agent.floor = spec.floor;
+                agent.position = spec.position();
+                agents.put(agent.id, agent);
+                continue;
+            }
+            var obj = new SimObject();
+            obj.spec = spec;
+            obj.gameId = "" + (10000 + n++);
+            objects.put(spec.id, obj);
+            if (spec.code.equals(LabRecruitsLevel.DOOR))
+                doors[spec.floor][spec.row][spec.column] = obj;
+            blocked[spec.floor][spec.row][spec.column] |= spec.isStaticObstacle();
+        }
+    }
+
+    /**
+     * Execute an agent-command, and return the resulting observation of the agent.
+     * Return null if there is no such agent.
+     */
+    Observation step(JsonObject command) {
+        var agent = agents.get(command.get("agentId").getAsString());
+        if (agent == null)
+            return null;
+        String cmd = command.get("cmd").getAsString();
+        boolean didNothing = true;
+        var before = agent.position.copy();
+        if (cmd.equals("MOVETOWARD")) {
+            var target = gson.fromJson(command.getAsJsonObject("arg").get("object1"), Vec3.class);
+            move(agent, target);
+            didNothing = false;
+        } else if (cmd.equals("INTERACT")) {
+            didNothing = !interact(agent, command.get("targetId").getAsString());
+        }
+        agent.velocity = Vec3.sub(agent.position, before);
+        for (var obj : objects.values()) {
+            if (obj.spec.code.equals(LabRecruitsLevel.FIRE) && obj.spec.floor == agent.floor
+                    && planarDistance(obj.spec.position(), agent.position) <= 0.5f + AGENT_RADIUS)
+                agent.health = Math.max(0, agent.health - FIRE_DAMAGE);
+        }
+        tick++;
+        return observe(agent, didNothing);
+    }
+
+    void move(SimAgent agent, Vec3 target) {
+        var direction = Vec3.sub(target, agent.position);
+        direction.y = 0;
+        float distance = Math.min(direction.length(), STEP_DISTANCE);
+        if (distance == 0)
+            return;
+        direction = direction.normalized();
+        // walk in small steps, and stop right before bumping into something:
+        float increment = 0.05f;
+        for (float walked = 0; walked < distance;) {
+            float d = Math.min(increment, distance - walked);
+            var next = Vec3.add(agent.position, Vec3.mul(direction, d));
+            if (!isFree(agent.floor, next.x, next.z))
+                return;
+            agent.position = next;
+            walked += d;
+        }
+    }
+
+    boolean isFree(int floor, float x, float z) {
+        for (float dx : new float[] { -AGENT_RADIUS, AGENT_RADIUS }) {
+            for (float dz : new float[] { -AGENT_RADIUS, AGENT_RADIUS }) {
+                int column = Math.round(x + dx);
+                int row = Math.round(z + dz);
+                if (level.tile(floor, row, column) != Tile.FLOOR || isBlockedByObject(floor, row, column))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isBlockedByObject(int floor, int row, int column) {
+        return blocked[floor][row][column] || isClosedDoor(floor, row, column);
+    }
+
+    boolean interact(SimAgent agent, String targetId) {
+        var button = objects.get(targetId);
+        if (button == null || button.spec.floor != agent.floor
+                || !(button.spec.code.equals(LabRecruitsLevel.BUTTON) || button.spec.code.equals(LabRecruitsLevel.COLORBUTTON))
+                || planarDistance(button.spec.position(), agent.position) > INTERACTION_DISTANCE)
+            return false;
+        button.active = !button.active;
+        for (String targetName : level.links.getOrDefault(targetId, List.of())) {
+            var target = objects.get(targetName);
+            if (target == null)
+                continue;
+            if (target.spec.code.equals(LabRecruitsLevel.DOOR))
+                target.active = !target.active;
+            else if (target.spec.code.equals(LabRecruitsLevel.COLORSCREEN))
+                updateColor(target);
+        }
+        return true;
+    }
+
+    // a screen shows the sum of the colors of the colored buttons that are on
+    void updateColor(SimObject screen) {
+        float[] color = { 0, 0, 0 };
+        for (var entry : level.links.entrySet()) {
+            var button = objects.get(entry.getKey());
+            if (button == null || !button.active || button.spec.color == null
+                    || !entry.getValue().contains(screen.spec.id))
+                continue;
+            for (int k = 0; k < 3; k++)
+                color[k] = Math.min(1f, color[k] + button.spec.color[k]);
+        }
+        screen.color = color;
+    }
+
+    Observation observe(SimAgent agent, boolean didNothing) {
+        var obs = new Observation();
+        obs.agent = obs.new Agent();
+        obs.agent.id = agent.id;
+        obs.agent.position = agent.position.copy();
+        obs.agent.velocity = agent.velocity;
+        obs.agent.didNothing = didNothing;
+        obs.agent.health = agent.health;
+        obs.agent.score = agent.score;
+        obs.agent.mood = agent.health > 50 ? "Happy" : "Scared";
+        obs.meta = new Observation.Meta();
+        obs.meta.tick = tick;
+        obs.meta.time = Instant.now().toString();
+
+        List<GameObject> seen = new ArrayList<>();
+        for (var obj : objects.values()) {
+            if (obj.spec.floor == agent.floor && canSee(agent, obj.spec.position()))
+                seen.add(toGameObject(obj));
+        }
+        obs.objects = seen.toArray(new GameObject[seen.size()]);
+
+        List<Integer> visibleVertices = new ArrayList<>();
+        for (int i = 0; i < navMesh.vertices.length; i++) {
+            var v = navMesh.vertices[i];
+            if (Math.abs(v.y - agent.position.y) < 0.1f && canSee(agent, v))
+                visibleVertices.add(i);
+        }
+        obs.navMeshIndices = new int[visibleVertices.size()];
+        for (int i = 0; i < obs.navMeshIndices.length; i++)
+            obs.navMeshIndices[i] = visibleVertices.get(i);
+        return obs;
+    }
+
+    /**
+     * True if the point is within the agent's view distance, and no wall or closed
+     * door stands in between. The tile of the point itself does not count.
+     */
+    boolean canSee(SimAgent agent, Vec3 p) {
+        float distance = planarDistance(agent.position, p);
+        if (distance > config.view_distance)
+            return false;
+        int targetColumn = Math.round(p.x);
+        int targetRow = Math.round(p.z);
+        int steps = (int) Math.ceil(distance / 0.25f);
+        for (int k = 1; k < steps; k++) {
+            float t = (float) k / steps;
+            int column = Math.round(agent.position.x + t * (p.x - agent.position.x));
+            int row = Math.round(agent.position.z + t * (p.z - agent.position.z));
+            if (column == targetColumn && row == targetRow)
+                continue;
+            if (level.tile(agent.floor, row, column) == Tile.WALL || isClosedDoor(agent.floor, row, column))
+                return false;
+        }
+        return true;
+    }
+
+    boolean isClosedDoor(int floor, int row, int column) {
+        if (level.tile(floor, row, column) == Tile.EMPTY)
+            return false;
+        var door = doors[floor][row][column];
+        return door != null && !door.active;
+    }
+
+    static float planarDistance(Vec3 p, Vec3 q) {
+        float dx = p.x - q.x;
+        float dz = p.z - q.z;
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    GameObject toGameObject(SimObject obj) {
+        var spec = obj.spec;
+        var go = new GameObject();
+        go.id = obj.gameId;
+        go.name = spec.id;
+        go.transform = new GameObject.Transform();
+        go.transform.position = obj.position();
+        go.transform.rotation = new Vec3(0, rotation(spec.direction), 0);
+        go.transform.velocity = Vec3.zero();
+        var collider = new GameObject.Collider();
+        collider.center = obj.position();
+        collider.size = new Vec3(1, 1, 1);
+        go.colliders = new GameObject.Collider[] { collider };
+        switch (spec.code) {
+        case LabRecruitsLevel.DOOR:
+            go.tag = "Door";
+            go.Toggleable = new GameObject.Toggleable();
+            go.Toggleable.isActive = obj.active;
+            // a door is thin:
+            collider.size = spec.direction == 'e' || spec.direction == 'w' ? new Vec3(0.2f, 2, 1) : new Vec3(1, 2, 0.2f);
+            break;
+        case LabRecruitsLevel.BUTTON:
+        case LabRecruitsLevel.COLORBUTTON:
+            go.tag = "Switch";
+            go.Interactable = new GameObject.Interactable();
+            go.Interactable.interactable = true;
+            go.Interactable.interactionCooldown = 0f;
+            go.Interactable.timeSinceInteraction = 0f;
+            go.Toggleable = new GameObject.Toggleable();
+            go.Toggleable.isActive = obj.active;
+            if (spec.color != null) {
+                go.Colorized = new GameObject.Colorized();
+                go.Colorized.color = color(spec.color);
+            }
+            break;
+        case LabRecruitsLevel.COLORSCREEN:
+            go.tag = "ColorScreen";
+            go.ColorScreen = new GameObject.ColorScreen();
+            go.ColorScreen.color = color(obj.color);
+            break;
+        case LabRecruitsLevel.FIRE:
+            go.tag = "Untagged";
+            go.name = "FireHazard(Clone)";
+            go.FireHazard = new GameObject.FireHazard();
+            break;
+        case LabRecruitsLevel.GOAL:
+            go.tag = "Goal";
+            break;
+        default:
+            go.tag = "Decoration";
+            go.name = spec.code + "Prefab(Clone)";
+            go.colliders = null;
+        }
+        return go;
+    }
+
+    static float rotation(char direction) {
+        switch (direction) {
+        case 'e':
+            return 90;
+        case 's':
+            return 180;
+        case 'w':
+            return 270;
+        default:
+            return 0;
+        }
+    }
+
+    static GameObject.Color color(float[] rgb) {
+        var c = new GameObject.Color();
+        c.r = rgb[0];
+        c.g = rgb[1];
+        c.b = rgb[2];
+        return c;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !closed;
+    }
+
+    /**
+     * Stop the simulator.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+            thread.join(5000);
+        } catch (IOException | InterruptedException e) {
+            // we are shutting down anyway
+        }
+    }
+}
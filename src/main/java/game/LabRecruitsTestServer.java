@@ -7,11 +7,18 @@ at Utrecht University within the Software and Game project course.
 
 package game;
 
+import environments.ConnectStrategy;
+import environments.LabRecruitsConfig;
 import environments.LabRecruitsEnvironment;
+import environments.Request;
+import environments.SocketReaderWriter;
+import eu.iv4xr.framework.exception.Iv4xrError;
 import helperclasses.PrintColor;
 import helperclasses.Util;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -22,10 +29,18 @@ import java.util.function.Function;
  * TCP port that let it to be controlled by an external agent. So, the game can
  * be seen as a "server".
  */
-public class LabRecruitsTestServer {
+public class LabRecruitsTestServer implements GameInstance {
 
     private Process server;
 
+    /**
+     * The port the game listens to.
+     */
+    private int port = 8053;
+
+    private long launchTime;
+    private float timeToReadyMillis = -1;
+
     /**
      * Create an instance of this class, launching the Lab Recruits game as it does
      * so. The game is assumed to be installed in ProgramFiles (windows) or in
@@ -51,6 +66,17 @@ public class LabRecruitsTestServer {
         start(useGraphics, binaryPath);
     }
 
+    /**
+     * Create an instance of this class, launching the Lab Recruits game as it does
+     * so, listening to the given port rather than the default 8053. The port is
+     * passed to the game as the command-line argument "-port", so this needs a
+     * build of the game that reads it.
+     */
+    public LabRecruitsTestServer(Boolean useGraphics, String binaryPath, int port) {
+        this.port = port;
+        start(useGraphics, binaryPath);
+    }
+
     /**
      * Launch the Lab Recruits game.
      */
@@ -67,12 +93,17 @@ public class LabRecruitsTestServer {
                     "The current server is still running. Close the server first by calling Close();");
 
         try {
-            ProcessBuilder pb = new ProcessBuilder(useGraphics ? new String[] { binaryPath }
-                    : new String[] { binaryPath, "-batchmode", "-nographics" });
+            List<String> command = new ArrayList<>(List.of(binaryPath));
+            if (!useGraphics)
+                command.addAll(List.of("-batchmode", "-nographics"));
+            if (port != 8053)
+                command.addAll(List.of("-port", "" + port));
+            ProcessBuilder pb = new ProcessBuilder(command);
 
             pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
             pb.redirectError(ProcessBuilder.Redirect.INHERIT);
 
+            launchTime = System.nanoTime();
             server = pb.start();
             waitFor(Process::isAlive);
 
@@ -82,22 +113,84 @@ public class LabRecruitsTestServer {
     }
 
     /**
-     * Return from method when the game has loaded
+     * Return from method when the game has loaded, that is, when it answers a
+     * request. The time this took is then available as
+     * {@link #timeToReadyMillis()}.
+     *
+     * This uses the readiness probe of {@link ConnectStrategy}: the game is ready
+     * once it answers a DISCONNECT, and accepts a new connection. Earlier
+     * versions instead sent the game an INIT request with an empty configuration;
+     * {@link #waitForGameToLoad(ConnectStrategy)}, with readiness_probe off, still
+     * does that.
+     *
+     * @throws Iv4xrError if the game does not become ready before the deadline of
+     *                    the connect strategy.
      */
     public void waitForGameToLoad() {
+        var strategy = new ConnectStrategy();
+        strategy.readiness_probe = true;
+        waitForGameToLoad(strategy);
+    }
+
+    /**
+     * As {@link #waitForGameToLoad()}, connecting with the given strategy. If it
+     * has readiness_probe off, the game is checked as it used to be: by loading
+     * an empty configuration through a {@link LabRecruitsEnvironment}, which is
+     * closed again afterwards.
+     *
+     * @throws Iv4xrError if the game does not become ready before the deadline of
+     *                    the connect strategy.
+     */
+    public void waitForGameToLoad(ConnectStrategy strategy) {
         if (server == null)
             throw new IllegalCallerException(
                     "Cannot wait for game to load, because the server is has not started yet!");
         if (!server.isAlive())
             throw new IllegalCallerException("Cannot wait for game to load, because, the server already closed down!");
 
-        // try to connect with an empty configuration
-        new LabRecruitsEnvironment();
+        if (!strategy.readiness_probe) {
+            // the game is ready when it answers an INIT:
+            var config = new LabRecruitsConfig();
+            config.port = port;
+            config.connect_strategy = strategy;
+            new LabRecruitsEnvironment(config).close();
+            timeToReadyMillis = (System.nanoTime() - launchTime) / 1000000f;
+            return;
+        }
+        // connect, with a readiness probe, and disconnect again:
+        var socket = new SocketReaderWriter("localhost", port, strategy);
+        if (socket.timeToReadyMillis() < 0)
+            throw new Iv4xrError("The game on port " + port + " did not become ready");
+        timeToReadyMillis = (System.nanoTime() - launchTime) / 1000000f;
+        try {
+            socket.write(Request.disconnect());
+            socket.read(Boolean.class);
+            socket.close();
+        } catch (IOException e) {
+            System.out.println(PrintColor.FAILURE() + ": Cannot disconnect after waiting for the game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The time, in ms, from launching the game until it answered in
+     * {@link #waitForGameToLoad()}; -1 if it was not waited for.
+     */
+    public float timeToReadyMillis() {
+        return timeToReadyMillis;
+    }
+
+    /**
+     * The port the game listens to.
+     */
+    @Override
+    public int port() {
+        return port;
     }
 
     /**
      * Close the game-instance by destroying the process that contains it.
      */
+    @Override
     public void close() {
         if (server != null) {
 
@@ -115,6 +208,7 @@ public class LabRecruitsTestServer {
      * Check whether the game is alive. This does not actually check that, but
      * rather only check if the process that contains the game is alive.
      */
+    @Override
     public boolean isRunning() {
         if (server == null)
             return false;
@@ -0,0 +1,96 @@
+package helperclasses;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values, typically latencies in
+ * nanoseconds, in the style of HdrHistogram: the buckets are log-linear, so
+ * that every value is counted with a relative error of at most 1/64, over the
+ * whole range of long, in a fixed array of counters. Recording is lock-free and
+ * costs a few atomic increments, so it can be done on every operation.
+ */
+public class LatencyHistogram {
+
+    // the values below 2^SUB_BITS have their own bucket; above, every power of
+    // two is split in 2^(SUB_BITS-1) buckets
+    private static final int SUB_BITS = 7;
+    private static final int HALF = 1 << (SUB_BITS - 1);
+    private static final int BUCKETS = (64 - SUB_BITS) * HALF + 2 * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucket(long value) {
+        if (value < 2 * HALF)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    // the highest value that is counted in the given bucket
+    static long highestInBucket(int bucket) {
+        if (bucket < 2 * HALF)
+            return bucket;
+        int shift = bucket / HALF - 1;
+        long mantissa = bucket - shift * HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Count the given value; negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * The value below or at which the given percentage (0..100) of the recorded
+     * values are, up to the precision of the buckets; 0 if nothing is recorded.
+     */
+    public long percentile(double percentage) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentage / 100 * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank)
+                return Math.min(highestInBucket(b), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forget all recorded values. Values recorded concurrently with a reset may
+     * be partly counted.
+     */
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++)
+            counts.set(b, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,86 @@
+package helperclasses;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs, using open addressing, so that adding a key does
+ * not box it or allocate a node. Used to find duplicates among pairs of ints
+ * that are packed into a long; see {@link #pack(int, int)}.
+ */
+public class LongHashSet {
+
+    // an unused slot holds EMPTY; the key EMPTY itself is tracked separately
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+    /**
+     * Create a set that can hold the given number of keys without growing.
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Pack two ints into a long; the first int becomes the upper half.
+     */
+    public static long pack(int hi, int lo) {
+        return (long) hi << 32 | (lo & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Add the key. Return true if it was not in the set yet.
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsEmpty)
+                return false;
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int slot = slot(key, slots);
+        if (slots[slot] == key)
+            return false;
+        slots[slot] = key;
+        size++;
+        if (2 * size > slots.length)
+            grow();
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY)
+            return containsEmpty;
+        return slots[slot(key, slots)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the slot holding the key, or the empty slot where it would go
+    private static int slot(long key, long[] slots) {
+        int mask = slots.length - 1;
+        // spread the bits, as the keys are often small and regular:
+        long h = key * 0x9E3779B97F4A7C15L;
+        int i = (int) (h ^ (h >>> 32)) & mask;
+        while (slots[i] != EMPTY && slots[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void grow() {
+        long[] bigger = new long[slots.length * 2];
+        Arrays.fill(bigger, EMPTY);
+        for (long key : slots) {
+            if (key != EMPTY)
+                bigger[slot(key, bigger)] = key;
+        }
+        slots = bigger;
+    }
+}
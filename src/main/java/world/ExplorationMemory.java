@@ -0,0 +1,124 @@
+package world;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+import eu.iv4xr.framework.spatial.meshes.Edge;
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+
+/**
+ * Remembers which nodes of the navigation mesh an agent has seen so far, as a
+ * bitset that every observation's visible nodes are added to (see
+ * {@link LabWorldModel#visibleNavigationNodes}).
+ *
+ * When the mesh is given (see {@link #setNavMesh(Mesh)}), it also keeps the
+ * frontier: the nodes not seen yet that are connected by an edge to a node
+ * that was seen. The frontier is updated as nodes are seen, so querying it
+ * does not require going over the mesh.
+ */
+public class ExplorationMemory implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BitSet seen = new BitSet();
+
+    // the frontier; null if the mesh is not known
+    private BitSet frontier;
+
+    // the neighbors of node v are neighbors[neighborsStart[v] .. neighborsStart[v+1]-1]
+    private int[] neighborsStart;
+    private int[] neighbors;
+
+    /**
+     * Give the navigation mesh whose vertices are the nodes, so that the frontier
+     * can be tracked. The frontier of the nodes seen so far is computed right
+     * away.
+     */
+    public void setNavMesh(Mesh mesh) {
+        int n = mesh.vertices.size();
+        int[] degree = new int[n + 1];
+        for (Edge e : mesh.edges) {
+            degree[e.i]++;
+            degree[e.j]++;
+        }
+        neighborsStart = new int[n + 1];
+        for (int v = 0; v < n; v++)
+            neighborsStart[v + 1] = neighborsStart[v] + degree[v];
+        neighbors = new int[neighborsStart[n]];
+        int[] fill = new int[n];
+        for (Edge e : mesh.edges) {
+            neighbors[neighborsStart[e.i] + fill[e.i]++] = e.j;
+            neighbors[neighborsStart[e.j] + fill[e.j]++] = e.i;
+        }
+        frontier = new BitSet(n);
+        for (int v = seen.nextSetBit(0); v >= 0; v = seen.nextSetBit(v + 1))
+            addUnseenNeighbors(v);
+    }
+
+    /**
+     * Add the given nodes to the seen ones. Nodes that were already seen cost
+     * just a bit-test.
+     */
+    public void markVisible(int[] nodes) {
+        if (nodes == null)
+            return;
+        for (int v : nodes) {
+            if (v < 0 || seen.get(v))
+                continue;
+            seen.set(v);
+            if (frontier != null) {
+                frontier.clear(v);
+                addUnseenNeighbors(v);
+            }
+        }
+    }
+
+    private void addUnseenNeighbors(int v) {
+        if (v + 1 >= neighborsStart.length)
+            return;
+        for (int k = neighborsStart[v]; k < neighborsStart[v + 1]; k++) {
+            if (!seen.get(neighbors[k]))
+                frontier.set(neighbors[k]);
+        }
+    }
+
+    public boolean isSeen(int node) {
+        return node >= 0 && seen.get(node);
+    }
+
+    /**
+     * The number of nodes seen so far.
+     */
+    public int seenCount() {
+        return seen.cardinality();
+    }
+
+    /**
+     * A copy of the set of nodes seen so far.
+     */
+    public BitSet seenNodes() {
+        return (BitSet) seen.clone();
+    }
+
+    /**
+     * True if the node is not seen yet, but is next to a seen node. Always false
+     * if the mesh is not known.
+     */
+    public boolean isFrontier(int node) {
+        return frontier != null && node >= 0 && frontier.get(node);
+    }
+
+    /**
+     * The number of frontier nodes; 0 if the mesh is not known.
+     */
+    public int frontierSize() {
+        return frontier == null ? 0 : frontier.cardinality();
+    }
+
+    /**
+     * The frontier nodes, in increasing order; empty if the mesh is not known.
+     */
+    public int[] frontierNodes() {
+        return frontier == null ? new int[0] : frontier.stream().toArray();
+    }
+}
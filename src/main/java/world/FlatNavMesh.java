@@ -0,0 +1,252 @@
+package world;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.RandomAccess;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import eu.iv4xr.framework.spatial.meshes.Edge;
+import eu.iv4xr.framework.spatial.meshes.Face;
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+
+/**
+ * A triangle mesh kept as flat arrays of primitives rather than as Vec3, Face
+ * and Edge objects: the x, y and z coordinates of the vertices as three float
+ * arrays, the vertex-indices of the triangles (three per triangle), and the
+ * vertex-indices of the edges (two per edge).
+ *
+ * The arrays live in a single buffer with the following layout (big-endian):
+ * a header of {@link #HEADER_SIZE} bytes holding {@link #MAGIC},
+ * {@link #FORMAT_VERSION}, and the numbers of vertices, triangles and edges;
+ * followed by the arrays in the order above. The buffer can be a
+ * memory-mapped file (see {@link #map(Path)}), in which case the mesh lives
+ * outside the Java heap, and several environments in the same JVM can share
+ * it. The mesh is read-only.
+ *
+ * Use {@link #asMesh()} to pass it to code that expects a {@link Mesh}.
+ */
+public class FlatNavMesh {
+
+    public static final int MAGIC = 0x4C524E4D; // "LRNM"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    private final ByteBuffer data;
+    private final int vertexCount;
+    private final int triangleCount;
+    private final int edgeCount;
+    private final FloatBuffer xs;
+    private final FloatBuffer ys;
+    private final FloatBuffer zs;
+    private final IntBuffer triangles;
+    private final IntBuffer edges;
+
+    private FlatNavMesh(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Not a nav-mesh of the expected version.");
+        vertexCount = data.getInt(8);
+        triangleCount = data.getInt(12);
+        edgeCount = data.getInt(16);
+        if (data.limit() < HEADER_SIZE + 4L * (3L * vertexCount + 3L * triangleCount + 2L * edgeCount))
+            throw new IOException("The nav-mesh is truncated.");
+        int offset = HEADER_SIZE;
+        xs = slice(offset).asFloatBuffer();
+        offset += 4 * vertexCount;
+        ys = slice(offset).asFloatBuffer();
+        offset += 4 * vertexCount;
+        zs = slice(offset).asFloatBuffer();
+        offset += 4 * vertexCount;
+        triangles = slice(offset).asIntBuffer();
+        offset += 12 * triangleCount;
+        edges = slice(offset).asIntBuffer();
+    }
+
+    private ByteBuffer slice(int offset) {
+        ByteBuffer b = data.duplicate();
+        b.position(offset);
+        return b.slice();
+    }
+
+    /**
+     * Copy the given mesh into a flat mesh on the heap. All its faces must be
+     * triangles.
+     */
+    public static FlatNavMesh of(Mesh mesh) {
+        int n = mesh.vertices.size();
+        int f = mesh.faces.size();
+        int e = mesh.edges.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * (3 * n + 3 * f + 2 * e));
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(n).putInt(f).putInt(e);
+        buffer.position(HEADER_SIZE);
+        for (Vec3 v : mesh.vertices)
+            buffer.putFloat(v.x);
+        for (Vec3 v : mesh.vertices)
+            buffer.putFloat(v.y);
+        for (Vec3 v : mesh.vertices)
+            buffer.putFloat(v.z);
+        for (Face face : mesh.faces) {
+            if (face.vertices.length != 3)
+                throw new IllegalArgumentException("Only triangle meshes can be flattened.");
+            for (int v : face.vertices)
+                buffer.putInt(v);
+        }
+        for (Edge edge : mesh.edges) {
+            Iterator<Integer> ends = edge.iterator();
+            buffer.putInt(ends.next());
+            buffer.putInt(ends.next());
+        }
+        buffer.flip();
+        try {
+            return new FlatNavMesh(buffer);
+        } catch (IOException ex) {
+            // cannot happen, we just wrote the header
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Map the given file, written by {@link #write(Path)}, into memory. The mesh
+     * is then read from the file's pages, which the operating system shares
+     * between all mappings of the file.
+     */
+    public static FlatNavMesh map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new FlatNavMesh(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read the given file, written by {@link #write(Path)}, into the heap.
+     */
+    public static FlatNavMesh read(Path file) throws IOException {
+        return new FlatNavMesh(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    /**
+     * Write this mesh to the given file.
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer buffer = data.duplicate();
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public int triangleCount() {
+        return triangleCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public float x(int vertex) {
+        return xs.get(vertex);
+    }
+
+    public float y(int vertex) {
+        return ys.get(vertex);
+    }
+
+    public float z(int vertex) {
+        return zs.get(vertex);
+    }
+
+    public Vec3 vertex(int vertex) {
+        return new Vec3(xs.get(vertex), ys.get(vertex), zs.get(vertex));
+    }
+
+    /**
+     * The index of the k-th vertex (0..2) of the given triangle.
+     */
+    public int triangleVertex(int triangle, int k) {
+        return triangles.get(3 * triangle + k);
+    }
+
+    /**
+     * The index of the first (k=0) or second (k=1) vertex of the given edge.
+     */
+    public int edgeVertex(int edge, int k) {
+        return edges.get(2 * edge + k);
+    }
+
+    /**
+     * Return a {@link Mesh} whose lists are read-only views on this flat mesh.
+     * The Vec3, Face and Edge objects are created when they are retrieved, and
+     * not kept; code that uses them repeatedly should copy them (as e.g.
+     * SurfaceNavGraph does when it is built from the mesh). Use
+     * {@link #toMesh()} to get an ordinary mesh instead.
+     */
+    public Mesh asMesh() {
+        Mesh mesh = new Mesh();
+        mesh.vertices = new View<Vec3>(vertexCount) {
+            @Override
+            public Vec3 get(int i) {
+                checkIndex(i);
+                return vertex(i);
+            }
+        };
+        mesh.faces = new View<Face>(triangleCount) {
+            @Override
+            public Face get(int i) {
+                checkIndex(i);
+                return new Face(new int[] { triangleVertex(i, 0), triangleVertex(i, 1), triangleVertex(i, 2) });
+            }
+        };
+        mesh.edges = new View<Edge>(edgeCount) {
+            @Override
+            public Edge get(int i) {
+                checkIndex(i);
+                return new Edge(edgeVertex(i, 0), edgeVertex(i, 1));
+            }
+        };
+        return mesh;
+    }
+
+    /**
+     * Return an ordinary, modifiable copy of this mesh on the heap.
+     */
+    public Mesh toMesh() {
+        Mesh view = asMesh();
+        Mesh mesh = new Mesh();
+        mesh.vertices = new ArrayList<>(view.vertices);
+        mesh.faces = new ArrayList<>(view.faces);
+        mesh.edges = new ArrayList<>(view.edges);
+        return mesh;
+    }
+
+    private static abstract class View<T> extends AbstractList<T> implements RandomAccess {
+        private final int size;
+
+        View(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        void checkIndex(int i) {
+            if (i < 0 || i >= size)
+                throw new IndexOutOfBoundsException("Index: " + i + ", size: " + size);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package world;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 
 import environments.LabRecruitsEnvironment;
 import eu.iv4xr.framework.mainConcepts.WorldEntity;
@@ -59,14 +59,40 @@ public class LabEntity extends WorldEntity implements LineIntersectable {
     public Collection<Vec3> intersect(Line l) {
         // only these types can block movements:
         if (type.equals(DOOR) || type.equals(COLORSCREEN)) {
-            // use a box to calculate the intersection with this door :D .. stretch the
-            // extent a bit larger
-            Box box = new Box(this.getFloorPosition(), Vec3.add(Vec3.mul(this.extent, 2f), new Vec3(0.1f, 0, 0.1f)));
-            var intersections = box.intersect(l);
+            var intersections = collisionBox().intersect(l);
             // System.out.println(">>> " + intersections) ;
             return intersections;
         } else
-            return new HashSet<>();
+            return NO_INTERSECTIONS;
+    }
+
+    private static final Collection<Vec3> NO_INTERSECTIONS = Collections.emptySet();
+
+    // the box used by intersect, and the position and extent it was made for
+    private transient Box collisionBox;
+    private transient float boxX, boxY, boxZ, boxExtentX, boxExtentY, boxExtentZ;
+
+    /**
+     * The box used to calculate the intersection with this entity: it stands on
+     * the entity's floor position, and its extent is stretched a bit. Doors and
+     * screens do not move, so the box is kept, and only made again if the
+     * position or extent of the entity changes.
+     */
+    Box collisionBox() {
+        if (collisionBox == null || position.x != boxX || position.y != boxY || position.z != boxZ
+                || extent.x != boxExtentX || extent.y != boxExtentY || extent.z != boxExtentZ) {
+            // use a box to calculate the intersection with this door :D .. stretch the
+            // extent a bit larger
+            collisionBox = new Box(this.getFloorPosition(),
+                    new Vec3(2f * extent.x + 0.1f, 2f * extent.y, 2f * extent.z + 0.1f));
+            boxX = position.x;
+            boxY = position.y;
+            boxZ = position.z;
+            boxExtentX = extent.x;
+            boxExtentY = extent.y;
+            boxExtentZ = extent.z;
+        }
+        return collisionBox;
     }
 
 }
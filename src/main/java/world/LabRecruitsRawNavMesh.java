@@ -7,11 +7,18 @@ at Utrecht University within the Software and Game project course.
 
 package world;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import eu.iv4xr.framework.spatial.Vec3;
 import eu.iv4xr.framework.spatial.meshes.Edge;
 import eu.iv4xr.framework.spatial.meshes.Face;
 import eu.iv4xr.framework.spatial.meshes.Mesh;
-import helperclasses.QArrayList;
+import helperclasses.LongHashSet;
 
 /**
  * This represents the raw navigation-mesh sent by Lab-Recruits. It is a list of
@@ -29,6 +36,20 @@ import helperclasses.QArrayList;
  */
 public class LabRecruitsRawNavMesh {
 
+    // The constants of the conversion. They are not fields of the mesh class
+    // itself, whose non-transient fields, static ones included, go over the wire.
+    private static class Conversion {
+        // meshes with at least this many triangles are converted in parallel;
+        // smaller ones are not worth the overhead
+        static final int PARALLEL_THRESHOLD = 50000;
+
+        // vertices at most this far apart are considered to be the same
+        static final float EPSILON = 0.001f;
+
+        // the number of triangles (or vertices) handled by one parallel task
+        static final int GRAIN = 4096;
+    }
+
     public int[] indices;
     public Vec3[] vertices;
 
@@ -44,33 +65,153 @@ public class LabRecruitsRawNavMesh {
      * This method fixes this by identifying such twins and force them to be merged.
      * 
      *  Thanks to Samira for the fix.
+     *
+     * The merging goes through the indices in order: every index j is compared
+     * with the (already fixed) indices i before it, in order, and is redirected to
+     * indices[i] when their vertices are at most epsilon apart. Rather than
+     * comparing all pairs, the vertices that earlier indices point to are kept in
+     * a grid of epsilon-sized cells, so that only the neighboring cells need to be
+     * looked at.
+     */
+    void fix_broken_navmesh() {
+        fix_broken_navmesh(null) ;
+    }
+
+    /**
+     * As {@link #fix_broken_navmesh()}, but only the indices pointing to vertices
+     * marked as candidate are looked at. This gives the same result if the other
+     * vertices have no other vertex within epsilon, as such vertices are never
+     * merged, and never merged into. Null means that all vertices are candidates.
      */
-    private void fix_broken_navmesh() {
-        float epsilon = 0.001f ;
-        for(int i=0; i< indices.length; i++) {
-            for(int j=i+1; j< indices.length; j++) {
-                int k = indices[i];
-                Vec3 currentVertix= vertices[k];
-                int n = indices[j];
-                Vec3 next = vertices[n];
-                float dis  = Vec3.dist(currentVertix, next);
-                
-                if(dis <= epsilon){
-                    if(k != n) {        
-                    indices[j] = k; 
+    private void fix_broken_navmesh(boolean[] candidate) {
+        float epsilon = Conversion.EPSILON ;
+        // for every vertex, the positions i (ascending) with indices[i] pointing to it:
+        int[][] positions = new int[vertices.length][] ;
+        int[] count = new int[vertices.length] ;
+        // the vertices that some fixed index points to, per grid cell:
+        Map<Long, int[]> grid = new HashMap<>() ;
+        for(int j=0; j< indices.length; j++) {
+            int cur = indices[j] ;
+            if (candidate != null && !candidate[cur]) continue ;
+            int last = -1 ;
+            while (true) {
+                // find the first position after last whose vertex is close to the
+                // current one; positions pointing to cur itself change nothing:
+                int next = Integer.MAX_VALUE ;
+                Vec3 p = vertices[cur] ;
+                long cx = cell(p.x, epsilon), cy = cell(p.y, epsilon), cz = cell(p.z, epsilon) ;
+                for (long dx = -1; dx <= 1; dx++)
+                for (long dy = -1; dy <= 1; dy++)
+                for (long dz = -1; dz <= 1; dz++) {
+                    int[] bucket = grid.get(cellKey(cx + dx, cy + dy, cz + dz)) ;
+                    if (bucket == null) continue ;
+                    for (int b = 1; b <= bucket[0]; b++) {
+                        int k = bucket[b] ;
+                        if (k == cur || Vec3.dist(vertices[k], p) > epsilon) continue ;
+                        int i = firstAfter(positions[k], count[k], last) ;
+                        if (i >= 0 && i < next) next = i ;
                     }
                 }
+                if (next == Integer.MAX_VALUE) break ;
+                cur = indices[next] ;
+                last = next ;
             }
+            indices[j] = cur ;
+            // register position j:
+            if (count[cur] == 0) {
+                positions[cur] = new int[2] ;
+                Vec3 p = vertices[cur] ;
+                long key = cellKey(cell(p.x, epsilon), cell(p.y, epsilon), cell(p.z, epsilon)) ;
+                int[] bucket = grid.get(key) ;
+                if (bucket == null) bucket = new int[3] ;
+                else if (bucket[0] + 1 == bucket.length) bucket = Arrays.copyOf(bucket, 2 * bucket.length) ;
+                bucket[++bucket[0]] = cur ;
+                grid.put(key, bucket) ;
+            }
+            else if (count[cur] == positions[cur].length) {
+                positions[cur] = Arrays.copyOf(positions[cur], 2 * count[cur]) ;
+            }
+            positions[cur][count[cur]++] = j ;
+        }
+    }
+
+    private static long cell(float x, float size) {
+        return (long) Math.floor(x / size) ;
+    }
+
+    private static long cellKey(long x, long y, long z) {
+        // distinct cells may share a key; that only adds candidates to check
+        return (x & 0x1FFFFF) << 42 | (y & 0x1FFFFF) << 21 | (z & 0x1FFFFF) ;
+    }
+
+    // the first of the sorted positions that is larger than last, or -1
+    private static int firstAfter(int[] positions, int count, int last) {
+        int lo = 0, hi = count ;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1 ;
+            if (positions[mid] <= last) lo = mid + 1 ;
+            else hi = mid ;
         }
+        return lo < count ? positions[lo] : -1 ;
     }
     
+    /**
+     * Check if two vertices have the same coordinates, using a hash table of
+     * vertex indices.
+     */
+    private boolean hasDuplicateVertices() {
+        int[] table = new int[Integer.highestOneBit(Math.max(4, vertices.length * 2 - 1)) << 1];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int v = 0; v < vertices.length; v++) {
+            Vec3 p = vertices[v];
+            int slot = hash(p) & mask;
+            while (table[slot] >= 0) {
+                Vec3 q = vertices[table[slot]];
+                if (p.x == q.x && p.y == q.y && p.z == q.z)
+                    return true;
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = v;
+        }
+        return false;
+    }
+
+    // consistent with ==, so 0 and -0 hash the same
+    private static int hash(Vec3 p) {
+        int h = Float.floatToIntBits(p.x + 0f);
+        h = 31 * h + Float.floatToIntBits(p.y + 0f);
+        h = 31 * h + Float.floatToIntBits(p.z + 0f);
+        return h ^ (h >>> 16);
+    }
+
     /**
      * This will convert this raw-mesh into the mesh representation as wanted by the
-     * iv4xr agents.See {@link eu.iv4xr.framework.spatial.meshes.Mesh}.
+     * iv4xr agents.See {@link eu.iv4xr.framework.spatial.meshes.Mesh}. Large
+     * meshes (of at least 50000 triangles) are converted in parallel; the result
+     * is the same.
      */
     public Mesh covertToMesh() {
+        boolean parallel = indices != null && indices.length / 3 >= Conversion.PARALLEL_THRESHOLD;
+        var event = WorldEvents.NavMeshConversion.start();
+        Mesh mesh = covertToMesh(parallel);
+        if (event != null)
+            event.end();
+        if (event != null && event.shouldCommit()) {
+            event.vertices = mesh.vertices.size();
+            event.faces = mesh.faces.size();
+            event.edges = mesh.edges.size();
+            event.parallel = parallel;
+            event.commit();
+        }
+        return mesh;
+    }
+
+    Mesh covertToMesh(boolean parallel) {
     	if (this.vertices == null) return new Mesh();
-        if (!new QArrayList<Vec3>(this.vertices).isDistinct())
+        if (parallel)
+            return covertToMeshInParallel();
+        if (hasDuplicateVertices())
             throw new IllegalArgumentException("There are duplicates in the vertex array!");
 
         Mesh mesh = new Mesh();
@@ -103,8 +244,11 @@ public class LabRecruitsRawNavMesh {
             mesh.faces.add(triangle);
         }
 
-        // (3) and now the edges:
+        // (3) and now the edges. An edge and its reverse are the same edge, so
+        // edges are keyed by their (smallest, largest) vertex; the first
+        // occurrence of each is kept:
 
+        var seen = new LongHashSet(indices.length);
         for (int triangle = 0; triangle < triangleCount; triangle++) {
             int vstart = triangle * 3;
 
@@ -112,11 +256,10 @@ public class LabRecruitsRawNavMesh {
             // for a triangle this executes 3 times
             for (int from = vstart; from < vstart + 3; from++) {
                 for (int to = from + 1; to < vstart + 3; to++) {
-
-                    // Create the edge, and it to the new mesh if it is not a duplicate:
-                    Edge e = new Edge(indices[from], indices[to]);
-                    if (!mesh.edges.contains(e)) {
-                        mesh.edges.add(e);
+                    int i = indices[from];
+                    int j = indices[to];
+                    if (seen.add(LongHashSet.pack(Math.min(i, j), Math.max(i, j)))) {
+                        mesh.edges.add(new Edge(i, j));
                     }
                 }
             }
@@ -125,4 +268,178 @@ public class LabRecruitsRawNavMesh {
         return mesh;
     }
 
+    /**
+     * The same conversion as above, with the work split over triangle (or vertex)
+     * ranges that are handled by fork-join tasks:
+     *
+     * (1) Every vertex is checked, in parallel, for other vertices within epsilon,
+     * using a sorted array of (cell-hash, vertex) pairs as the grid. This also
+     * finds duplicate vertices. Only the few vertices that do have such
+     * neighbors are then passed to the (sequential) fix.
+     *
+     * (2) The faces are created in parallel.
+     *
+     * (3) For the edges, every chunk of triangles collects, in parallel, its
+     * distinct edges in its own set, in the order they occur. The chunk sets are
+     * then merged once, in order, keeping the first occurrence of every edge;
+     * these are exactly the edges the sequential conversion keeps, in the same
+     * order and orientation.
+     */
+    private Mesh covertToMeshInParallel() {
+        int n = vertices.length;
+        float epsilon = Conversion.EPSILON;
+        long[] grid = new long[n];
+        forRange(n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                Vec3 p = vertices[v];
+                grid[v] = (long) cellHash(cell(p.x, epsilon), cell(p.y, epsilon), cell(p.z, epsilon)) << 32 | v;
+            }
+        });
+        Arrays.parallelSort(grid);
+        boolean[] candidate = new boolean[n];
+        AtomicBoolean duplicates = new AtomicBoolean(false);
+        forRange(n, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                Vec3 p = vertices[v];
+                long cx = cell(p.x, epsilon), cy = cell(p.y, epsilon), cz = cell(p.z, epsilon);
+                for (long dx = -1; dx <= 1; dx++)
+                for (long dy = -1; dy <= 1; dy++)
+                for (long dz = -1; dz <= 1; dz++) {
+                    int h = cellHash(cx + dx, cy + dy, cz + dz);
+                    for (int s = firstOfCell(grid, h); s < n && (int) (grid[s] >>> 32) == h; s++) {
+                        int k = (int) grid[s];
+                        if (k == v) continue;
+                        Vec3 q = vertices[k];
+                        if (p.x == q.x && p.y == q.y && p.z == q.z)
+                            duplicates.set(true);
+                        if (Vec3.dist(p, q) <= epsilon)
+                            candidate[v] = true;
+                    }
+                }
+            }
+        });
+        if (duplicates.get())
+            throw new IllegalArgumentException("There are duplicates in the vertex array!");
+        fix_broken_navmesh(candidate);
+
+        Mesh mesh = new Mesh();
+        mesh.vertices.addAll(Arrays.asList(vertices));
+
+        int triangleCount = indices.length / 3;
+        Face[] faces = new Face[triangleCount];
+        forRange(triangleCount, (from, to) -> {
+            for (int tr = from; tr < to; tr++)
+                faces[tr] = new Face(new int[] { indices[3 * tr], indices[3 * tr + 1], indices[3 * tr + 2] });
+        });
+        mesh.faces.addAll(Arrays.asList(faces));
+
+        // occurrence 3*tr+k is the k-th of the pairs (0,1), (0,2), (1,2) of triangle
+        // tr, which is the order in which the sequential conversion visits them.
+        // Every chunk of triangles keeps, in its own set, the first occurrence of
+        // each of its edges:
+        int occurrences = 3 * triangleCount;
+        int chunks = (triangleCount + Conversion.GRAIN - 1) / Conversion.GRAIN;
+        long[][] chunkKeys = new long[chunks][];
+        int[][] chunkOccurrences = new int[chunks][];
+        forRange(chunks, 1, (from, to) -> {
+            for (int c = from; c < to; c++) {
+                int first = 3 * c * Conversion.GRAIN, last = Math.min(occurrences, 3 * (c + 1) * Conversion.GRAIN);
+                var seen = new LongHashSet(last - first);
+                long[] keys = new long[last - first];
+                int[] kept = new int[last - first];
+                int count = 0;
+                for (int o = first; o < last; o++) {
+                    int i = indices[edgeStart(o)];
+                    int j = indices[edgeEnd(o)];
+                    long key = LongHashSet.pack(Math.min(i, j), Math.max(i, j));
+                    if (seen.add(key)) {
+                        keys[count] = key;
+                        kept[count++] = o;
+                    }
+                }
+                chunkKeys[c] = Arrays.copyOf(keys, count);
+                chunkOccurrences[c] = Arrays.copyOf(kept, count);
+            }
+        });
+        // merge the chunks once, in order, so that the first occurrence over the
+        // whole mesh is kept, as the sequential conversion does:
+        int total = 0;
+        for (int c = 0; c < chunks; c++)
+            total += chunkKeys[c].length;
+        var seen = new LongHashSet(total);
+        Edge[] edges = new Edge[total];
+        int e = 0;
+        for (int c = 0; c < chunks; c++) {
+            long[] keys = chunkKeys[c];
+            int[] kept = chunkOccurrences[c];
+            for (int k = 0; k < keys.length; k++)
+                if (seen.add(keys[k]))
+                    edges[e++] = new Edge(indices[edgeStart(kept[k])], indices[edgeEnd(kept[k])]);
+        }
+        mesh.edges.addAll(Arrays.asList(edges).subList(0, e));
+        return mesh;
+    }
+
+    // the positions in indices of the two ends of edge-occurrence o
+    private static int edgeStart(int o) {
+        return o - o % 3 + (o % 3 == 2 ? 1 : 0);
+    }
+
+    private static int edgeEnd(int o) {
+        return o - o % 3 + (o % 3 == 0 ? 1 : 2);
+    }
+
+    private static int cellHash(long x, long y, long z) {
+        long h = cellKey(x, y, z) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+    // the position of the first entry of the sorted grid with the given cell-hash
+    private static int firstOfCell(long[] grid, int h) {
+        long target = (long) h << 32;
+        int lo = 0, hi = grid.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (grid[mid] < target) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // the body of a loop over the range [from,to)
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private static void forRange(int n, RangeBody body) {
+        forRange(n, Conversion.GRAIN, body);
+    }
+
+    // run the body over [0,n), split into fork-join tasks of at most grain each
+    private static void forRange(int n, int grain, RangeBody body) {
+        ForkJoinPool.commonPool().invoke(new RangeTask(0, n, grain, body));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final int from, to, grain;
+        final RangeBody body;
+
+        RangeTask(int from, int to, int grain, RangeBody body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                body.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, grain, body), new RangeTask(mid, to, grain, body));
+        }
+    }
 }
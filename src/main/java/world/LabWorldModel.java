@@ -5,6 +5,8 @@ import environments.LabRecruitsEnvironment;
 import eu.iv4xr.framework.mainConcepts.W3DEnvironment;
 import eu.iv4xr.framework.mainConcepts.WorldEntity;
 import eu.iv4xr.framework.mainConcepts.WorldModel;
+import eu.iv4xr.framework.spatial.Box;
+import eu.iv4xr.framework.spatial.Line;
 import eu.iv4xr.framework.spatial.Vec3;
 import nl.uu.cs.aplib.mainConcepts.Environment;
 
@@ -26,6 +28,43 @@ public class LabWorldModel extends WorldModel {
 
     public boolean didNothingPreviousGameTurn;
 
+    // created on the first merge, see exploration()
+    private ExplorationMemory exploration;
+
+    /**
+     * The game objects currently in the agent's view, as a map from the id the
+     * game gives to the object to the id of the corresponding entity in this
+     * model. When delta observations are used (see
+     * {@link Observation#delta}), an entity whose state did not change keeps the
+     * time-stamp of the observation in which it last changed; this map tells
+     * whether it is still in view.
+     *
+     * A model made from an observation gets its own map; other models share an
+     * empty, unmodifiable one until the first observation is merged into them.
+     */
+    public Map<String, String> visibleObjects = Collections.emptyMap();
+
+    /**
+     * True if this model was made from a delta observation; its elements are
+     * then only the entities that came into view or changed.
+     */
+    public boolean isDelta = false;
+
+    /**
+     * If this model was made from a delta observation, the game ids of the
+     * objects that went out of view.
+     */
+    public String[] removedObjects;
+
+    /**
+     * The size of the cells of the {@link SpatialIndex} over the entities.
+     */
+    public static final float INDEX_CELL_SIZE = 2f;
+
+    // the index over the entities; built when first needed, and kept up to date
+    // by mergeNewObservation
+    private transient SpatialIndex index;
+
     // Lab Recruits so far only have one interaction-type with items in the game;
     // let's just call it "interact".
     public static final String INTERACT = "interact";
@@ -42,12 +81,189 @@ public class LabWorldModel extends WorldModel {
 
     @Override
     public List<WorldEntity> mergeNewObservation(WorldModel observation) {
+        var event = WorldEvents.MergeObservation.start();
         LabWorldModel observation_ = (LabWorldModel) observation;
         this.health = observation_.health;
         this.score = observation_.score;
         this.mood = observation_.mood;
         this.visibleNavigationNodes = observation_.visibleNavigationNodes;
-        return super.mergeNewObservation(observation);
+        exploration().markVisible(visibleNavigationNodes);
+        if (visibleObjects == Collections.<String, String>emptyMap())
+            visibleObjects = new HashMap<>();
+        if (observation_.isDelta) {
+            // only apply what changed; entities that are still in view and did not
+            // change are left as they are:
+            for (String gameId : observation_.removedObjects)
+                visibleObjects.remove(gameId);
+        } else {
+            visibleObjects.clear();
+        }
+        visibleObjects.putAll(observation_.visibleObjects);
+        var impacted = super.mergeNewObservation(observation);
+        if (index != null) {
+            for (WorldEntity e : observation.elements.values()) {
+                // static entities do not move, and are not merged again:
+                if (!e.dynamic && index.contains(e.id))
+                    continue;
+                addToIndex(index, elements.get(e.id));
+            }
+        }
+        if (event != null)
+            event.end();
+        if (event != null && event.shouldCommit()) {
+            event.agentId = observation.agentId;
+            event.tick = observation.timestamp;
+            event.observed = observation.elements.size();
+            event.impacted = impacted.size();
+            event.delta = observation_.isDelta;
+            event.commit();
+        }
+        return impacted;
+    }
+
+    /**
+     * The navigation nodes seen so far: the {@link #visibleNavigationNodes} of
+     * all observations merged into this model (by
+     * {@link #mergeNewObservation}). Give it the navigation mesh to also track the
+     * frontier of unexplored nodes.
+     */
+    public ExplorationMemory exploration() {
+        if (exploration == null)
+            exploration = new ExplorationMemory();
+        return exploration;
+    }
+
+    private SpatialIndex index() {
+        if (index == null) {
+            index = new SpatialIndex(INDEX_CELL_SIZE);
+            for (WorldEntity e : elements.values())
+                addToIndex(index, e);
+        }
+        return index;
+    }
+
+    private static void addToIndex(SpatialIndex index, WorldEntity e) {
+        if (e == null || e.position == null)
+            return;
+        index.put(e.id, boundsMin(e), boundsMax(e));
+    }
+
+    /**
+     * The corners of the box that the index uses for an entity. This is its
+     * bounding box, stretched to include the box that {@link LabEntity#intersect}
+     * uses, which is placed at the entity's floor position.
+     */
+    static Vec3 boundsMin(WorldEntity e) {
+        Vec3 extent = e.extent == null ? Vec3.zero() : e.extent;
+        return new Vec3(e.position.x - extent.x - 0.05f, e.position.y - 2 * extent.y, e.position.z - extent.z - 0.05f);
+    }
+
+    static Vec3 boundsMax(WorldEntity e) {
+        Vec3 extent = e.extent == null ? Vec3.zero() : e.extent;
+        return new Vec3(e.position.x + extent.x + 0.05f, e.position.y + extent.y, e.position.z + extent.z + 0.05f);
+    }
+
+    /**
+     * Return the known entities whose position is at most the given distance
+     * from the center.
+     * 
+     * This, and the other queries below, use a spatial index over the entities,
+     * so they only look at the entities near the queried area. The index follows
+     * the entities as they are merged by {@link #mergeNewObservation}; entities
+     * added in another way are only seen if they were there when the index was
+     * first needed.
+     */
+    public List<LabEntity> entitiesWithin(Vec3 center, float radius) {
+        Vec3 r = new Vec3(radius);
+        List<LabEntity> found = new ArrayList<>();
+        for (String id : index().candidatesInBox(Vec3.sub(center, r), Vec3.add(center, r))) {
+            LabEntity e = getElement(id);
+            if (e != null && Vec3.distSq(e.position, center) <= radius * radius)
+                found.add(e);
+        }
+        return found;
+    }
+
+    /**
+     * Return the known entities whose bounding box (position +/- extent) overlaps
+     * the box with the given corners.
+     */
+    public List<LabEntity> entitiesInBox(Vec3 min, Vec3 max) {
+        List<LabEntity> found = new ArrayList<>();
+        for (String id : index().candidatesInBox(min, max)) {
+            LabEntity e = getElement(id);
+            if (e != null && overlaps(e, min, max))
+                found.add(e);
+        }
+        return found;
+    }
+
+    private static boolean overlaps(WorldEntity e, Vec3 min, Vec3 max) {
+        Vec3 extent = e.extent == null ? Vec3.zero() : e.extent;
+        return e.position.x - extent.x <= max.x && e.position.x + extent.x >= min.x
+                && e.position.y - extent.y <= max.y && e.position.y + extent.y >= min.y
+                && e.position.z - extent.z <= max.z && e.position.z + extent.z >= min.z;
+    }
+
+    /**
+     * Return the known entities whose collision box, the box that
+     * {@link LabEntity#intersect} uses, is crossed by the segment from-to. The
+     * index only picks the candidates; every candidate is then checked against
+     * its collision box.
+     */
+    public List<LabEntity> entitiesAlong(Vec3 from, Vec3 to) {
+        List<LabEntity> found = new ArrayList<>();
+        for (String id : index().candidatesAlong(from, to)) {
+            LabEntity e = getElement(id);
+            if (e == null || e.position == null || e.extent == null)
+                continue;
+            Box box = e.collisionBox();
+            Vec3 half = Vec3.mul(box.width, 0.5f);
+            if (segmentCrossesBox(from, to, Vec3.sub(box.center, half), Vec3.add(box.center, half)))
+                found.add(e);
+        }
+        return found;
+    }
+
+    /**
+     * Return the known entities that block movement (see {@link #isBlocking}) and
+     * that the segment from-to intersects, as {@link LabEntity#intersect} says.
+     * This is the same as checking every entity, as an obstacle check would, but
+     * only looks at the entities near the segment.
+     */
+    public List<LabEntity> blockingEntitiesAlong(Vec3 from, Vec3 to) {
+        List<LabEntity> found = new ArrayList<>();
+        Line line = new Line(from, to);
+        for (String id : index().candidatesAlong(from, to)) {
+            LabEntity e = getElement(id);
+            if (e == null || e.position == null || e.extent == null || !isBlocking(e))
+                continue;
+            if (!e.intersect(line).isEmpty())
+                found.add(e);
+        }
+        return found;
+    }
+
+    // the slab test: clip the segment against the box, one axis at a time
+    static boolean segmentCrossesBox(Vec3 from, Vec3 to, Vec3 min, Vec3 max) {
+        float[] t = { 0f, 1f };
+        return clip(from.x, to.x - from.x, min.x, max.x, t) && clip(from.y, to.y - from.y, min.y, max.y, t)
+                && clip(from.z, to.z - from.z, min.z, max.z, t);
+    }
+
+    private static boolean clip(float start, float d, float min, float max, float[] t) {
+        if (d == 0)
+            return start >= min && start <= max;
+        float t0 = (min - start) / d;
+        float t1 = (max - start) / d;
+        if (t0 > t1) {
+            float tmp = t0;
+            t0 = t1;
+            t1 = tmp;
+        }
+        t[0] = Math.max(t[0], t0);
+        t[1] = Math.min(t[1], t1);
+        return t[0] <= t[1];
     }
 
     @Override
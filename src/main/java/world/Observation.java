@@ -1,7 +1,9 @@
 package world;
 
 import java.io.Serializable;
-import java.util.function.Function;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import eu.iv4xr.framework.spatial.Vec3;
 
@@ -107,6 +109,21 @@ public class Observation {
     public GameObject[] objects;
     public int[] navMeshIndices;
 
+    /**
+     * If true, this is a delta observation: {@link #objects} then only contains
+     * the game objects that came into view or changed since the previous
+     * observation of the same agent, and {@link #removed} lists the ids
+     * ({@link GameObject#id}) of the game objects that went out of view. Objects
+     * that are still in view and did not change are not sent.
+     */
+    public boolean delta;
+
+    /**
+     * In a delta observation, the ids of the game objects that are no longer in
+     * view. Null in a full observation.
+     */
+    public String[] removed;
+
     public static LabWorldModel toWorldModel(Observation obs) {
         if (obs == null)
             return null;
@@ -126,15 +143,31 @@ public class Observation {
         // Agent position correction
         wom.position.y += 0.75;
 
+        wom.visibleObjects = new HashMap<>(Math.max(16, obs.objects.length * 4 / 3 + 1));
         for (int i = 0; i < obs.objects.length; i++) {
             var we = toWorldEntity(obs.objects[i]);
             we.assignTimeStamp(wom.timestamp);
             wom.updateEntity(we);
+            wom.visibleObjects.put(gameObjectKey(obs.objects[i], we), we.id);
+        }
+        if (obs.delta) {
+            wom.isDelta = true;
+            wom.removedObjects = obs.removed == null ? new String[0] : obs.removed;
         }
 
         return wom;
     }
 
+    /**
+     * The key under which a game object is tracked in
+     * {@link LabWorldModel#visibleObjects}. This is the id the game gives to the
+     * object, which is also what a delta observation uses to say that the object
+     * went out of view.
+     */
+    static String gameObjectKey(GameObject obj, LabEntity e) {
+        return obj.id != null ? obj.id : e.id;
+    }
+
     static String constructId(GameObject obj) {
         switch (obj.tag) {
         case "Door":
@@ -146,101 +179,154 @@ public class Observation {
         case "Decoration":
             // decorations are statics, so we can use their x,y,z coordinates to identify
             // them
-            int k = obj.name.indexOf("Prefab");
-            if(k<0) k = obj.name.length() ;
-            String id_ = obj.name.substring(0, k) + "@" + obj.transform.position.toString();
-            return id_;
+            return positionalId(obj, "Prefab");
         default:
             // well other cases
             // (1) Fire
             if (obj.FireHazard != null) {
                 // Firehazard does not move around, so we will use their positions to identify
                 // them
-                k = obj.name.indexOf("(Clone)");
-                if(k<0) k = obj.name.length() ;
-                id_ = obj.name.substring(0, k) + "@" + obj.transform.position.toString();
-                return id_;
+                return positionalId(obj, "(Clone)");
             }
             // other cases ... not sure. Use name?
             return obj.name;
         }
     }
 
-    public static LabEntity toWorldEntity(GameObject obj) {
-        if (obj == null)
-            return null;
-        String we_type = "";
-        // dynamic game-object can change state; for now we will just declare all
-        // game-objects sent by LR to be
-        // dynamic. TODO: refine this in the future. E.g. a chair is not dynamic.
-        boolean isDynamic = true;
+    /**
+     * An id constructed by {@link #constructId(GameObject)} from the name and
+     * position of a game object, remembered under the object's Unity id.
+     */
+    private static class CachedId {
+        final String name;
+        // the bits of the coordinates, so that e.g. 0.0 and -0.0, which give
+        // different ids, are told apart
+        final int x, y, z;
+        final String id;
+
+        CachedId(String name, Vec3 position, String id) {
+            this.name = name;
+            this.x = Float.floatToIntBits(position.x);
+            this.y = Float.floatToIntBits(position.y);
+            this.z = Float.floatToIntBits(position.z);
+            this.id = id;
+        }
 
-        Function<LabEntity, LabEntity> builder = we -> {
-            we.position = obj.transform.position;
-            we.extent = Vec3.zero();
-            return we;
-        };
+        boolean isFor(GameObject obj) {
+            Vec3 p = obj.transform.position;
+            return Float.floatToIntBits(p.x) == x && Float.floatToIntBits(p.y) == y
+                    && Float.floatToIntBits(p.z) == z && name.equals(obj.name);
+        }
+    }
 
-        // TODO: combine all colliders or change how WorldEntity stores the extent.
-        if (obj.colliders != null && obj.colliders.length > 0) {
+    /**
+     * The ids of static game objects, by their Unity id. Such objects are seen
+     * again every tick, and this saves building their id again, and gives the
+     * same String instance every time. An entry is only used if the object still
+     * has the name and position it was built from, so a Unity id that is reused
+     * (e.g. after loading another level) gets a fresh id.
+     */
+    private static final Map<String, CachedId> idCache = new ConcurrentHashMap<>();
+    private static final int ID_CACHE_LIMIT = 1 << 16;
+
+    // the object's name up to the given suffix, followed by "@" and its position
+    private static String positionalId(GameObject obj, String suffix) {
+        CachedId cached = obj.id == null ? null : idCache.get(obj.id);
+        if (cached != null && cached.isFor(obj))
+            return cached.id;
+        int k = obj.name.indexOf(suffix);
+        if (k < 0)
+            k = obj.name.length();
+        String id_ = (obj.name.substring(0, k) + "@" + obj.transform.position.toString()).intern();
+        if (obj.id != null) {
+            if (idCache.size() >= ID_CACHE_LIMIT)
+                idCache.clear();
+            idCache.put(obj.id, new CachedId(obj.name, obj.transform.position, id_));
+        }
+        return id_;
+    }
 
-            builder = builder.andThen(we -> {
-                we.position = obj.colliders[0].center;
-                we.extent = Vec3.mul(obj.colliders[0].size, 0.5f);
-                we.extent.x = Math.abs(we.extent.x);
-                we.extent.y = Math.abs(we.extent.y);
-                we.extent.z = Math.abs(we.extent.z);
-                return we;
-            });
-            if (obj.colliders.length > 1) {
-                System.out.println(String.format("Multiple colliders found for object " + obj.name + "/" + obj.id + "/"
-                        + obj.tag + ", this is currently not supported.", obj.name));
-            }
+    /**
+     * True if entities of the given type (see {@link LabEntity}) can change, and
+     * are therefore merged again on every observation. Other entities are static;
+     * their time-stamp stays that of the observation in which they were first
+     * seen. Use {@link LabWorldModel#visibleObjects} to check whether they are
+     * still in view.
+     */
+    public static boolean isDynamicType(String type) {
+        switch (type) {
+        case LabEntity.DOOR:
+        case LabEntity.SWITCH:
+        case LabEntity.COLORSCREEN:
+        case LabEntity.GOAL:
+        case LabEntity.FIREHAZARD:
+            return true;
+        default:
+            return false;
         }
+    }
 
+    /**
+     * Convert a game object to a LabEntity. This is done for every object in every
+     * observation, so the entity is filled in directly, without intermediate
+     * objects.
+     */
+    public static LabEntity toWorldEntity(GameObject obj) {
+        if (obj == null)
+            return null;
+        String we_type;
         if (obj.tag.equals("Door") && obj.Toggleable != null) {
             we_type = LabEntity.DOOR;
-            builder = builder.andThen(we -> {
-                we.properties.put("isOpen", obj.Toggleable.isActive);
-                return we;
-            });
-
         } else if (obj.tag.equals("Switch") && obj.Interactable != null) {
             we_type = LabEntity.SWITCH;
-            if (obj.Toggleable != null) {
-                builder = builder.andThen(we -> {
-                    we.properties.put("isOn", obj.Toggleable.isActive);
-                    return we;
-                });
-            } else {
-                builder = builder.andThen(we -> {
-                    we.properties.put("isOn", false);
-                    return we;
-                });
-            }
-            if (obj.Colorized != null) {
-                builder = builder.andThen(we -> {
-                    we.properties.put("color", obj.Colorized.color);
-                    return we;
-                });
-            }
         } else if (obj.tag.equals("ColorScreen") && obj.ColorScreen != null) {
             we_type = LabEntity.COLORSCREEN;
-            builder = builder.andThen(we -> {
-                // System.out.println("### org color: " + obj.ColorScreen.color) ;
-                we.properties.put("color", obj.ColorScreen.color);
-                return we;
-            });
         } else if (obj.tag.equals("Goal")) {
             we_type = LabEntity.GOAL;
         } else if (obj.FireHazard != null) {
             we_type = LabEntity.FIREHAZARD;
+        } else {
+            we_type = "";
         }
+        // dynamic game-object can change state. Doors, switches and screens do;
+        // goals and fire hazards are kept dynamic too. Everything else (walls,
+        // chairs and other decorations) is static: once the agent knows it, it is
+        // not merged again.
+        boolean isDynamic = isDynamicType(we_type);
 
-        LabEntity we_final = new LabEntity(
+        LabEntity we = new LabEntity(
                 // obj.name, // TODO: obj.id would be more appropriate, but some tests still use
                 // name.
                 constructId(obj), we_type, isDynamic);
-        return builder.apply(we_final);
+
+        // TODO: combine all colliders or change how WorldEntity stores the extent.
+        if (obj.colliders != null && obj.colliders.length > 0) {
+            we.position = obj.colliders[0].center;
+            Vec3 size = obj.colliders[0].size;
+            we.extent = new Vec3(Math.abs(0.5f * size.x), Math.abs(0.5f * size.y), Math.abs(0.5f * size.z));
+            if (obj.colliders.length > 1) {
+                System.out.println(String.format("Multiple colliders found for object " + obj.name + "/" + obj.id + "/"
+                        + obj.tag + ", this is currently not supported.", obj.name));
+            }
+        } else {
+            we.position = obj.transform.position;
+            we.extent = Vec3.zero();
+        }
+
+        switch (we_type) {
+        case LabEntity.DOOR:
+            we.properties.put("isOpen", obj.Toggleable.isActive);
+            break;
+        case LabEntity.SWITCH:
+            we.properties.put("isOn", obj.Toggleable != null ? obj.Toggleable.isActive : Boolean.FALSE);
+            if (obj.Colorized != null)
+                we.properties.put("color", obj.Colorized.color);
+            break;
+        case LabEntity.COLORSCREEN:
+            we.properties.put("color", obj.ColorScreen.color);
+            break;
+        default:
+        }
+        return we;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,164 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.iv4xr.framework.spatial.Vec3;
+
+/**
+ * A uniform grid over the bounding boxes of entities, used by
+ * {@link LabWorldModel} to answer range and segment queries without looking at
+ * every entity. An entity is registered in every cell its box overlaps. The
+ * index only knows ids and boxes; the queries return the ids of the entities
+ * whose box may satisfy the query, and the caller checks them exactly.
+ */
+public class SpatialIndex {
+
+    /** The size of the (cubic) cells. */
+    public final float cellSize;
+
+    // the cells, by their packed coordinates, with the ids of the entities in them
+    private final Map<Long, List<String>> cells = new HashMap<>();
+
+    // the range of cells every entity is in: minx, miny, minz, maxx, maxy, maxz
+    private final Map<String, int[]> ranges = new HashMap<>();
+
+    public SpatialIndex(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public int size() {
+        return ranges.size();
+    }
+
+    public boolean contains(String id) {
+        return ranges.containsKey(id);
+    }
+
+    /**
+     * Register the entity with the given id and box, or move it there if it is
+     * already registered.
+     */
+    public void put(String id, Vec3 min, Vec3 max) {
+        int[] range = { cell(min.x), cell(min.y), cell(min.z), cell(max.x), cell(max.y), cell(max.z) };
+        int[] old = ranges.get(id);
+        if (old != null) {
+            if (Arrays.equals(old, range))
+                return;
+            remove(id);
+        }
+        ranges.put(id, range);
+        for (int x = range[0]; x <= range[3]; x++)
+            for (int y = range[1]; y <= range[4]; y++)
+                for (int z = range[2]; z <= range[5]; z++)
+                    cells.computeIfAbsent(key(x, y, z), k -> new ArrayList<>(2)).add(id);
+    }
+
+    public void remove(String id) {
+        int[] range = ranges.remove(id);
+        if (range == null)
+            return;
+        for (int x = range[0]; x <= range[3]; x++)
+            for (int y = range[1]; y <= range[4]; y++)
+                for (int z = range[2]; z <= range[5]; z++) {
+                    long k = key(x, y, z);
+                    List<String> ids = cells.get(k);
+                    ids.remove(id);
+                    if (ids.isEmpty())
+                        cells.remove(k);
+                }
+    }
+
+    /**
+     * The ids of the entities in the cells that overlap the box [min,max].
+     */
+    public Set<String> candidatesInBox(Vec3 min, Vec3 max) {
+        Set<String> found = new LinkedHashSet<>();
+        for (int x = cell(min.x); x <= cell(max.x); x++)
+            for (int y = cell(min.y); y <= cell(max.y); y++)
+                for (int z = cell(min.z); z <= cell(max.z); z++)
+                    addCell(x, y, z, found);
+        return found;
+    }
+
+    /**
+     * The ids of the entities in the cells that the segment from-to passes
+     * through. The cells are visited by walking along the segment, one cell
+     * boundary at a time.
+     */
+    public Set<String> candidatesAlong(Vec3 from, Vec3 to) {
+        Set<String> found = new LinkedHashSet<>();
+        int x = cell(from.x), y = cell(from.y), z = cell(from.z);
+        int endX = cell(to.x), endY = cell(to.y), endZ = cell(to.z);
+        Walk wx = new Walk(from.x, to.x, x, endX);
+        Walk wy = new Walk(from.y, to.y, y, endY);
+        Walk wz = new Walk(from.z, to.z, z, endZ);
+        addCell(x, y, z, found);
+        while (wx.remaining + wy.remaining + wz.remaining > 0) {
+            // step over the boundary that is crossed first:
+            double tx = wx.next(), ty = wy.next(), tz = wz.next();
+            if (tx <= ty && tx <= tz) {
+                x += wx.step();
+            } else if (ty <= tz) {
+                y += wy.step();
+            } else {
+                z += wz.step();
+            }
+            addCell(x, y, z, found);
+        }
+        return found;
+    }
+
+    // the walk along one axis, through the cells between the two ends of a segment
+    private class Walk {
+        final int direction;
+        int remaining;
+        double tNext;
+        final double tDelta;
+
+        Walk(float from, float to, int cellFrom, int cellTo) {
+            direction = cellTo > cellFrom ? 1 : -1;
+            remaining = Math.abs(cellTo - cellFrom);
+            double d = to - from;
+            if (remaining == 0) {
+                tNext = Double.POSITIVE_INFINITY;
+                tDelta = 0;
+            } else {
+                // the fraction of the segment at which the next boundary is crossed:
+                double boundary = (direction > 0 ? cellFrom + 1 : cellFrom) * (double) cellSize;
+                tNext = (boundary - from) / d;
+                tDelta = cellSize / Math.abs(d);
+            }
+        }
+
+        double next() {
+            return remaining > 0 ? tNext : Double.POSITIVE_INFINITY;
+        }
+
+        int step() {
+            remaining--;
+            tNext += tDelta;
+            return direction;
+        }
+    }
+
+    private void addCell(int x, int y, int z, Set<String> found) {
+        List<String> ids = cells.get(key(x, y, z));
+        if (ids != null)
+            found.addAll(ids);
+    }
+
+    private int cell(float coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int x, int y, int z) {
+        // distinct cells may share a key; that only adds candidates
+        return ((long) x & 0x1FFFFF) << 42 | ((long) y & 0x1FFFFF) << 21 | ((long) z & 0x1FFFFF);
+    }
+}
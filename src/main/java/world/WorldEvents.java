@@ -0,0 +1,75 @@
+package world;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of building and updating the world model. See
+ * also {@link environments.ProtocolEvents}.
+ */
+public class WorldEvents {
+
+    @Name("jlabgym.NavMeshConversion")
+    @Label("Nav-Mesh Conversion")
+    @Category({ "JLabGym", "World" })
+    @Description("Converting the navigation mesh sent by the game into a Mesh.")
+    public static class NavMeshConversion extends Event {
+        @Label("Vertices")
+        public int vertices;
+
+        @Label("Faces")
+        public int faces;
+
+        @Label("Edges")
+        public int edges;
+
+        @Label("Parallel")
+        public boolean parallel;
+
+        private static final EventType TYPE = EventType.getEventType(NavMeshConversion.class);
+
+        static NavMeshConversion start() {
+            if (!TYPE.isEnabled())
+                return null;
+            var event = new NavMeshConversion();
+            event.begin();
+            return event;
+        }
+    }
+
+    @Name("jlabgym.MergeObservation")
+    @Label("Merge Observation")
+    @Category({ "JLabGym", "World" })
+    @Description("Merging an observation into an agent's world model.")
+    public static class MergeObservation extends Event {
+        @Label("Agent Id")
+        public String agentId;
+
+        @Label("Tick")
+        public long tick;
+
+        @Label("Observed Entities")
+        public int observed;
+
+        @Label("Impacted Entities")
+        @Description("The number of entities that are new or changed.")
+        public int impacted;
+
+        @Label("Delta")
+        public boolean delta;
+
+        private static final EventType TYPE = EventType.getEventType(MergeObservation.class);
+
+        static MergeObservation start() {
+            if (!TYPE.isEnabled())
+                return null;
+            var event = new MergeObservation();
+            event.begin();
+            return event;
+        }
+    }
+}
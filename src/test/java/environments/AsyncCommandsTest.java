@@ -0,0 +1,41 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Vec3;
+
+/**
+ * Tests the asynchronous commands of {@link LabRecruitsEnvironment} against
+ * {@link FakeLabRecruitsServer}.
+ */
+public class AsyncCommandsTest {
+
+    @Test
+    public void test_async_commands() throws Exception {
+        var server = new FakeLabRecruitsServer(1) ;
+        var env = new LabRecruitsEnvironment(server.config()) ;
+
+        var f0 = env.observeAsync("agent0") ;
+        var f1 = env.moveTowardAsync("agent0", new Vec3(1, 0.75f, 1), new Vec3(2, 0, 1)) ;
+        var f2 = env.interactAsync("agent0", "button1", "") ;
+        // the calling thread is free to do other things here...
+        var o0 = f0.get() ;
+        var o1 = f1.get() ;
+        var o2 = f2.get() ;
+        // executed in the order of submission:
+        assertTrue(o0.timestamp < o1.timestamp && o1.timestamp < o2.timestamp) ;
+        assertEquals(2, o1.position.x, 0.001f) ;
+        assertTrue(server.receivedRequests.get(3).contains("INTERACT")) ;
+
+        // mixing with a synchronous command:
+        var f3 = env.observeAsync("agent0") ;
+        var o4 = env.observe("agent0") ;
+        assertNotNull(f3.get()) ;
+        assertNotNull(o4) ;
+
+        assertTrue(env.close()) ;
+        server.close() ;
+    }
+}
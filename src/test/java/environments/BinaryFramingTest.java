@@ -0,0 +1,107 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.Observation;
+import world.ObservationSamples;
+
+/**
+ * Tests the binary encoding of observations, and the length-prefixed framing
+ * against {@link FakeLabRecruitsServer}.
+ */
+public class BinaryFramingTest {
+
+    static Gson gson = new GsonBuilder().serializeNulls().excludeFieldsWithModifiers(Modifier.TRANSIENT).create() ;
+
+    @Test
+    public void test_codec_roundtrip() {
+        Observation obs = ObservationSamples.sample(300, 7) ;
+        // some nulls in places where they are allowed:
+        obs.objects[3].transform.velocity = null ;
+        obs.objects[4].id = null ;
+        obs.objects[5].Interactable = new Observation.GameObject.Interactable() ;
+        obs.objects[10] = null ;
+        obs.navMeshIndices[1] = 0 ;
+        byte[] bytes = BinaryObservationCodec.encode(obs) ;
+        Observation obs2 = BinaryObservationCodec.decode(ByteBuffer.wrap(bytes)) ;
+        assertEquals(gson.toJson(obs), gson.toJson(obs2)) ;
+
+        int jsonSize = SocketReaderWriter.gson.toJson(obs).getBytes(StandardCharsets.UTF_8).length ;
+        System.out.println(">>> json: " + jsonSize + " bytes, binary: " + bytes.length + " bytes") ;
+        assertTrue(bytes.length < jsonSize / 3) ;
+
+        obs.delta = true ;
+        obs.removed = new String[] { "1003", null, "1007" } ;
+        assertEquals(gson.toJson(obs),
+                gson.toJson(BinaryObservationCodec.decode(ByteBuffer.wrap(BinaryObservationCodec.encode(obs))))) ;
+
+        Observation empty = new Observation() ;
+        assertEquals(gson.toJson(empty),
+                gson.toJson(BinaryObservationCodec.decode(ByteBuffer.wrap(BinaryObservationCodec.encode(empty))))) ;
+    }
+
+    void test_binary_framing(boolean nio) throws Exception {
+        var server = new FakeLabRecruitsServer(1) ;
+        server.objectsPerObservation = 100 ;
+        var config = server.config() ;
+        config.nio_transport = nio ;
+        config.wire_format = LabRecruitsConfig.WireFormat.BINARY ;
+        var env = new LabRecruitsEnvironment(config) ;
+        assertEquals(1, env.worldNavigableMesh.faces.size()) ;
+
+        var o = env.observe("agent0") ;
+        assertEquals(100, o.elements.size()) ;
+        o = env.moveToward("agent0", o.position, new Vec3(2, 0, 1)) ;
+        assertEquals(2, o.position.x, 0.001f) ;
+        assertTrue(server.receivedRequests.get(2).contains("MOVETOWARD")) ;
+
+        assertTrue(env.close()) ;
+        server.close() ;
+    }
+
+    void test_reload_in_binary_framing(boolean nio) throws Exception {
+        var server = new FakeLabRecruitsServer(1) ;
+        var config = server.config() ;
+        config.nio_transport = nio ;
+        config.wire_format = LabRecruitsConfig.WireFormat.BINARY ;
+        var env = new LabRecruitsEnvironment(config) ;
+        env.observe("agent0") ;
+        // the second INIT goes framed, like every request after the first INIT:
+        env.loadWorld() ;
+        assertEquals(1, env.worldNavigableMesh.faces.size()) ;
+        assertTrue(server.receivedRequests.get(2).contains("INIT")) ;
+        assertEquals(1, env.observe("agent0").position.x, 0.001f) ;
+        assertTrue(env.close()) ;
+        server.close() ;
+    }
+
+    @Test
+    public void test_reload_in_binary_framing_classic_socket() throws Exception {
+        test_reload_in_binary_framing(false) ;
+    }
+
+    @Test
+    public void test_reload_in_binary_framing_nio() throws Exception {
+        test_reload_in_binary_framing(true) ;
+    }
+
+    @Test
+    public void test_binary_framing_classic_socket() throws Exception {
+        test_binary_framing(false) ;
+    }
+
+    @Test
+    public void test_binary_framing_nio() throws Exception {
+        test_binary_framing(true) ;
+    }
+}
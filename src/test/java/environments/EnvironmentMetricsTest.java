@@ -0,0 +1,128 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import environments.EnvironmentMetrics.Phase;
+import eu.iv4xr.framework.spatial.Vec3;
+import game.LabRecruitsSimulator;
+
+/**
+ * Checks the metrics that {@link LabRecruitsEnvironment} records, running
+ * against {@link LabRecruitsSimulator}.
+ */
+public class EnvironmentMetricsTest {
+
+    LabRecruitsSimulator simulator ;
+
+    @BeforeEach
+    void start() throws Exception {
+        simulator = new LabRecruitsSimulator(0) ;
+    }
+
+    @AfterEach
+    void close() {
+        simulator.close() ;
+    }
+
+    @Test
+    public void test_operations_are_recorded() throws Exception {
+        var env = new LabRecruitsEnvironment(simulator.config("square2")) ;
+        var obs = env.observe("agent0") ;
+        for (int k = 0; k < 3; k++)
+            obs = env.moveToward("agent0", obs.position, Vec3.add(obs.position, new Vec3(-1, 0, 0))) ;
+        env.interact("agent0", "button0", "") ;
+        var metrics = env.metrics() ;
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.LOADWORLD, Phase.WAIT).count()) ;
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.OBSERVE, Phase.TOTAL).count()) ;
+        assertEquals(3, metrics.histogram(LabRecruitsEnvironment.MOVETOWARD, Phase.TOTAL).count()) ;
+        for (var phase : Phase.values())
+            assertEquals(3L, metrics.histogram(LabRecruitsEnvironment.MOVETOWARD, phase).count(), phase.toString()) ;
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.INTERACT, Phase.TO_WORLD_MODEL).count()) ;
+        assertTrue(metrics.bytesIn(LabRecruitsEnvironment.LOADWORLD) > 1000) ;
+        assertTrue(metrics.bytesOut(LabRecruitsEnvironment.OBSERVE) > 10) ;
+        // the phases are part of the whole:
+        var move = LabRecruitsEnvironment.MOVETOWARD ;
+        long phases = 0 ;
+        for (var phase : new Phase[] { Phase.SERIALIZE, Phase.WRITE, Phase.WAIT, Phase.DESERIALIZE, Phase.TO_WORLD_MODEL })
+            phases += metrics.histogram(move, phase).mean() ;
+        assertTrue(phases <= metrics.histogram(move, Phase.TOTAL).mean() * 1.05) ;
+        assertTrue(metrics.operationsPerSecond(move) > 0) ;
+
+        var file = Files.createTempFile("metrics", ".csv") ;
+        metrics.exportToCSV(file.toString()) ;
+        var lines = Files.readAllLines(file) ;
+        assertTrue(lines.get(0).startsWith("operation,phase,count")) ;
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("MOVETOWARD,WAIT,3,"))) ;
+        Files.delete(file) ;
+
+        env.close() ;
+        assertTrue(metrics.histogram("DISCONNECT", Phase.WAIT).count() == 1) ;
+        metrics.reset() ;
+        assertEquals(0, metrics.histogram(move, Phase.TOTAL).count()) ;
+    }
+
+    @Test
+    public void test_pipelined_and_batched_commands_are_recorded() {
+        var config = simulator.config("square2") ;
+        config.batch_commands = true ;
+        var env = new LabRecruitsEnvironment(config) ;
+        env.stepAll(Map.of("agent0", AgentCommand.doNothing("agent0"), "agent1", AgentCommand.doNothing("agent1"))) ;
+        env.pipelineMoveAlong("agent0", env.observe("agent0").position, java.util.List.of(new Vec3(4, 0.75f, 4))) ;
+        var metrics = env.metrics() ;
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.AGENTCOMMANDS, Phase.WRITE).count()) ;
+        // two from the batch, and the observe:
+        assertEquals(3, metrics.histogram(LabRecruitsEnvironment.OBSERVE, Phase.WAIT).count()) ;
+        assertTrue(metrics.histogram(LabRecruitsEnvironment.MOVETOWARD, Phase.WAIT).count() > 0) ;
+        // the batch is one TOTAL, the pipelined commands have one each:
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.AGENTCOMMANDS, Phase.TOTAL).count()) ;
+        assertEquals(1, metrics.histogram(LabRecruitsEnvironment.OBSERVE, Phase.TOTAL).count()) ;
+        assertEquals(metrics.histogram(LabRecruitsEnvironment.MOVETOWARD, Phase.WAIT).count(),
+                metrics.histogram(LabRecruitsEnvironment.MOVETOWARD, Phase.TOTAL).count()) ;
+        env.close() ;
+    }
+
+    @Test
+    public void test_bytes_are_utf8() {
+        String agent = "agent\u00e9\u20ac" ;
+        String json = SocketReaderWriter.gson.toJson(Request.command(AgentCommand.doNothing(agent))) ;
+        for (boolean nio : new boolean[] { false, true }) {
+            // the classic transport ends lines with println:
+            long expected = json.getBytes(StandardCharsets.UTF_8).length + (nio ? 1 : System.lineSeparator().length()) ;
+            var config = simulator.config("square2") ;
+            config.nio_transport = nio ;
+            var env = new LabRecruitsEnvironment(config) ;
+            env.observe(agent) ;
+            assertEquals(expected, env.metrics().bytesOut(LabRecruitsEnvironment.OBSERVE)) ;
+            // the game answers "null":
+            assertEquals(5L, env.metrics().bytesIn(LabRecruitsEnvironment.OBSERVE)) ;
+            env.close() ;
+        }
+    }
+
+    @Test
+    public void test_jmx() throws Exception {
+        var config = simulator.config("square2") ;
+        config.jmx_metrics = true ;
+        var env = new LabRecruitsEnvironment(config) ;
+        env.observe("agent0") ;
+        var server = ManagementFactory.getPlatformMBeanServer() ;
+        var names = server.queryNames(new ObjectName("environments:type=LabRecruitsEnvironment,*"), null) ;
+        assertEquals(1, names.size()) ;
+        var name = names.iterator().next() ;
+        var counts = (javax.management.openmbean.TabularData) server.getAttribute(name, "Counts") ;
+        assertTrue(counts.containsKey(new Object[] { "OBSERVE.WAIT" })) ;
+        env.close() ;
+        assertTrue(server.queryNames(new ObjectName("environments:type=LabRecruitsEnvironment,*"), null).isEmpty()) ;
+    }
+}
@@ -0,0 +1,171 @@
+package environments;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.LabRecruitsRawNavMesh;
+import world.Observation;
+import world.ObservationSamples;
+
+/**
+ * A stand-in for Lab Recruits, to test the Java side of the protocol without
+ * the game. It serves one client. It answers INIT with a tiny nav-mesh, and
+ * agent-commands with a synthetic observation in which the agent stands at the
+ * location it was last told to move to.
+ *
+ * Requests are not answered right away: the server collects up to
+ * {@link #batch} requests (or waits until no more requests arrive for a short
+ * while) before answering them, in order. This lets tests observe how many
+ * requests a client keeps in flight.
+ *
+ * If the INIT request asks for the BINARY wire-format, the server switches to
+ * length-prefixed frames after answering it, and sends observations in the
+ * binary encoding. Frames are answered one at a time; a later INIT is answered
+ * with a json frame.
+ */
+public class FakeLabRecruitsServer {
+
+    public final int batch ;
+    public int maxInFlight = 0 ;
+    public final List<String> receivedRequests = new LinkedList<>() ;
+
+    ServerSocket server ;
+    Thread thread ;
+    int tick = 0 ;
+    boolean binary = false ;
+    public int objectsPerObservation = 5 ;
+    Vec3 agentPosition = new Vec3(1, 0, 1) ;
+
+    public FakeLabRecruitsServer(int batch) throws IOException {
+        this.batch = batch ;
+        server = new ServerSocket(0) ;
+        thread = new Thread(this::serve) ;
+        thread.start();
+    }
+
+    public int port() {
+        return server.getLocalPort() ;
+    }
+
+    public LabRecruitsConfig config() {
+        var config = new LabRecruitsConfig() ;
+        config.port = port() ;
+        return config ;
+    }
+
+    void serve() {
+        try (Socket client = server.accept()) {
+            client.setSoTimeout(100);
+            var in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8)) ;
+            OutputStream out = client.getOutputStream() ;
+            List<JsonObject> pending = new ArrayList<>() ;
+            boolean disconnected = false ;
+            while (!disconnected) {
+                String line = null ;
+                boolean timedOut = false ;
+                try {
+                    line = in.readLine() ;
+                    if (line == null) return ;
+                    receivedRequests.add(line) ;
+                    pending.add(JsonParser.parseString(line).getAsJsonObject()) ;
+                    maxInFlight = Math.max(maxInFlight, pending.size()) ;
+                }
+                catch(SocketTimeoutException e) {
+                    timedOut = true ;
+                }
+                if (pending.size() >= batch || (timedOut && pending.size() > 0)) {
+                    for (JsonObject request : pending) {
+                        String cmd = request.get("cmd").getAsString() ;
+                        out.write((respond(request) + "\n").getBytes(StandardCharsets.UTF_8));
+                        disconnected = disconnected || cmd.equals("DISCONNECT") ;
+                        binary = binary || (cmd.equals("INIT")
+                                && request.getAsJsonObject("arg").get("wire_format").getAsString().equals("BINARY")) ;
+                    }
+                    out.flush();
+                    pending.clear();
+                }
+                if (binary) {
+                    client.setSoTimeout(0);
+                    serveFrames(new DataInputStream(client.getInputStream()), new DataOutputStream(out)) ;
+                    return ;
+                }
+            }
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    void serveFrames(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte[] frame = new byte[in.readInt()] ;
+            in.readFully(frame);
+            assert frame[0] == SocketReaderWriter.FRAME_JSON ;
+            String line = new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8) ;
+            receivedRequests.add(line) ;
+            var request = JsonParser.parseString(line).getAsJsonObject() ;
+            String cmd = request.get("cmd").getAsString() ;
+            byte[] payload ;
+            byte kind ;
+            if (cmd.equals("AGENTCOMMAND")) {
+                kind = SocketReaderWriter.FRAME_BINARY_OBSERVATION ;
+                payload = BinaryObservationCodec.encode(observe(request)) ;
+            }
+            else {
+                kind = SocketReaderWriter.FRAME_JSON ;
+                payload = respond(request).getBytes(StandardCharsets.UTF_8) ;
+            }
+            out.writeInt(payload.length + 1);
+            out.writeByte(kind);
+            out.write(payload);
+            out.flush();
+            if (cmd.equals("DISCONNECT")) return ;
+        }
+    }
+
+    String respond(JsonObject request) {
+        switch (request.get("cmd").getAsString()) {
+        case "INIT":
+            var mesh = new LabRecruitsRawNavMesh(new int[] { 0, 1, 2 },
+                    new Vec3[] { new Vec3(0, 0, 0), new Vec3(1, 0, 0), new Vec3(0, 0, 1) }) ;
+            return SocketReaderWriter.gson.toJson(mesh) ;
+        case "AGENTCOMMAND":
+            return SocketReaderWriter.gson.toJson(observe(request)) ;
+        default:
+            return "true" ;
+        }
+    }
+
+    Observation observe(JsonObject request) {
+        var command = request.getAsJsonObject("arg") ;
+        if (command.get("cmd").getAsString().equals("MOVETOWARD")) {
+            var target = command.getAsJsonObject("arg").getAsJsonObject("object1") ;
+            agentPosition = new Vec3(target.get("x").getAsFloat(), target.get("y").getAsFloat(),
+                    target.get("z").getAsFloat()) ;
+        }
+        Observation obs = ObservationSamples.sample(objectsPerObservation, tick) ;
+        obs.agent.id = command.get("agentId").getAsString() ;
+        obs.agent.position = agentPosition.copy() ;
+        obs.meta.tick = tick++ ;
+        return obs ;
+    }
+
+    public void close() throws Exception {
+        server.close();
+        thread.join(5000);
+    }
+}
@@ -0,0 +1,95 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import game.LabRecruitsSimulator;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import world.LabWorldModel;
+
+/**
+ * Records a short session against {@link LabRecruitsSimulator} with Java
+ * Flight Recorder, and checks the JLabGym events in the recording.
+ */
+public class FlightRecorderEventsTest {
+
+    static List<RecordedEvent> events(List<RecordedEvent> all, String name) {
+        return all.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList()) ;
+    }
+
+    @Test
+    public void test_events_are_recorded() throws Exception {
+        var simulator = new LabRecruitsSimulator(0) ;
+        var file = Files.createTempFile("jlabgym", ".jfr") ;
+        LabWorldModel wom ;
+        try (var recording = new Recording()) {
+            for (var name : new String[] { "jlabgym.RequestSent", "jlabgym.ObservationReceived", "jlabgym.LoadWorld",
+                    "jlabgym.NavMeshConversion", "jlabgym.MergeObservation" })
+                recording.enable(name).withoutThreshold() ;
+            recording.start() ;
+            var env = new LabRecruitsEnvironment(simulator.config("square2")) ;
+            var obs = env.observe("agent0") ;
+            wom = env.moveToward("agent0", obs.position, Vec3.add(obs.position, new Vec3(-1, 0, 0))) ;
+            obs.mergeNewObservation(wom) ;
+            env.close() ;
+            recording.stop() ;
+            recording.dump(file) ;
+        } finally {
+            simulator.close() ;
+        }
+        var all = RecordingFile.readAllEvents(file) ;
+        Files.delete(file) ;
+
+        var loads = events(all, "jlabgym.LoadWorld") ;
+        assertEquals(1, loads.size()) ;
+        assertEquals("square2", loads.get(0).getString("level")) ;
+        assertFalse(loads.get(0).getBoolean("fromCache")) ;
+        assertTrue(loads.get(0).getInt("faces") > 0) ;
+        var conversions = events(all, "jlabgym.NavMeshConversion") ;
+        assertEquals(1, conversions.size()) ;
+        assertEquals(loads.get(0).getInt("vertices"), conversions.get(0).getInt("vertices")) ;
+
+        // INIT, the observe, the move, and DISCONNECT:
+        var requests = events(all, "jlabgym.RequestSent") ;
+        assertEquals(List.of("INIT", "AGENTCOMMAND", "AGENTCOMMAND", "DISCONNECT"),
+                requests.stream().map(e -> e.getString("requestType")).collect(Collectors.toList())) ;
+        assertEquals("agent0", requests.get(2).getString("agentId")) ;
+        assertEquals("MOVETOWARD", requests.get(2).getString("operation")) ;
+        assertTrue(requests.get(2).getLong("bytes") > 0) ;
+
+        var observations = events(all, "jlabgym.ObservationReceived") ;
+        assertEquals(2, observations.size()) ;
+        var move = observations.get(1) ;
+        assertEquals("agent0", move.getString("agentId")) ;
+        assertEquals(wom.timestamp, move.getLong("tick")) ;
+        assertTrue(move.getInt("objectCount") > 0) ;
+        assertTrue(move.getLong("bytes") > 0) ;
+
+        var merges = events(all, "jlabgym.MergeObservation") ;
+        assertEquals(1, merges.size()) ;
+        assertEquals(wom.timestamp, merges.get(0).getLong("tick")) ;
+        assertEquals(wom.elements.size(), merges.get(0).getInt("observed")) ;
+    }
+
+    @Test
+    public void test_disabled_events_are_not_allocated() {
+        // no recording is running:
+        assertNull(ProtocolEvents.RequestSent.start()) ;
+        assertNull(ProtocolEvents.LoadWorld.start()) ;
+        try (var recording = new Recording()) {
+            recording.enable("jlabgym.LoadWorld") ;
+            recording.disable("jlabgym.RequestSent") ;
+            recording.start() ;
+            assertNotNull(ProtocolEvents.LoadWorld.start()) ;
+            assertNull(ProtocolEvents.RequestSent.start()) ;
+        }
+    }
+}
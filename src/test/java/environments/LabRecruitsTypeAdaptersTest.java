@@ -0,0 +1,110 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.lang.reflect.Modifier;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import nl.uu.cs.aplib.utils.Pair;
+import world.LabRecruitsRawNavMesh;
+import world.Observation;
+import world.ObservationSamples;
+
+/**
+ * Checks that the hand-written type-adapters produce/accept the same json as
+ * Gson's reflective adapters, and compares their speed.
+ */
+public class LabRecruitsTypeAdaptersTest {
+
+    static Gson reflective = new GsonBuilder().serializeNulls().excludeFieldsWithModifiers(Modifier.TRANSIENT).create() ;
+    static Gson handwritten = LabRecruitsTypeAdapters
+            .register(new GsonBuilder().serializeNulls().excludeFieldsWithModifiers(Modifier.TRANSIENT)).create() ;
+
+    @Test
+    public void test_requests_json() {
+        var config = new LabRecruitsConfig().addSwitchToDoorLinks(new Pair<>("button1", "door1")) ;
+        Request<?>[] requests = {
+                Request.startSimulation(),
+                Request.disconnect(),
+                Request.gymEnvironmentInitialisation(config),
+                Request.command(AgentCommand.doNothing("agent0")),
+                Request.command(AgentCommand.interactCommand("agent0", "button0")),
+                Request.command(AgentCommand.moveTowardCommand("agent0", new Vec3(1.1f, 0f, -2.5f), true))
+        } ;
+        for (var r : requests) {
+            String json = handwritten.toJson(r) ;
+            System.out.println(json) ;
+            assertEquals(reflective.toJson(r), json) ;
+        }
+    }
+
+    @Test
+    public void test_navmesh_json() {
+        var mesh = new LabRecruitsRawNavMesh(new int[] { 0, 1, 2 },
+                new Vec3[] { new Vec3(0, 0, 0), new Vec3(1, 0, 0), new Vec3(0, 0, 1) }) ;
+        // only the mesh data goes over the wire:
+        var json = JsonParser.parseString(SocketReaderWriter.gson.toJson(mesh)).getAsJsonObject() ;
+        assertEquals(java.util.Set.of("indices", "vertices"), json.keySet()) ;
+        var mesh2 = SocketReaderWriter.gson.fromJson(json, LabRecruitsRawNavMesh.class) ;
+        assertArrayEquals(mesh.indices, mesh2.indices) ;
+    }
+
+    @Test
+    public void test_observation_json() {
+        Observation obs = ObservationSamples.sample(200, 1) ;
+        String json = reflective.toJson(obs) ;
+        // parse with the hand-written adapters, and then write it back reflectively:
+        Observation obs2 = handwritten.fromJson(json, Observation.class) ;
+        assertEquals(json, reflective.toJson(obs2)) ;
+        // the hand-written writer should produce json that parses back to the same:
+        Observation obs3 = reflective.fromJson(handwritten.toJson(obs), Observation.class) ;
+        assertEquals(json, reflective.toJson(obs3)) ;
+        // a delta observation:
+        obs.delta = true ;
+        obs.removed = new String[] { "1001", "1002" } ;
+        json = reflective.toJson(obs) ;
+        assertEquals(json, reflective.toJson(reflective.fromJson(handwritten.toJson(obs), Observation.class))) ;
+        assertEquals(json, reflective.toJson(handwritten.fromJson(json, Observation.class))) ;
+        // unknown fields should be skipped:
+        Observation obs4 = handwritten.fromJson(
+                "{\"agent\":{\"id\":\"a\",\"extra\":[1,{}]},\"foo\":null,\"objects\":[],\"navMeshIndices\":null}",
+                Observation.class) ;
+        assertEquals("a", obs4.agent.id) ;
+        assertEquals(0, obs4.objects.length) ;
+    }
+
+    /**
+     * A simple timing comparison between the reflective and hand-written adapters
+     * on observations of several sizes. This only prints the results.
+     */
+    @Test
+    public void benchmark_observation_parsing() {
+        for (int size : new int[] { 50, 300, 1000 }) {
+            // written by the hand-written adapter, as that matches what Lab Recruits sends:
+            String json = handwritten.toJson(ObservationSamples.sample(size, size)) ;
+            double tReflective = timePerParse(reflective, json) ;
+            double tHandwritten = timePerParse(handwritten, json) ;
+            System.out.println(String.format(
+                    ">>> %d objects (%d chars): reflective %.1f us/parse, hand-written %.1f us/parse",
+                    size, json.length(), tReflective, tHandwritten)) ;
+        }
+    }
+
+    static double timePerParse(Gson gson, String json) {
+        int warmup = 300 ;
+        int runs = 300 ;
+        Object sink = null ;
+        for (int i = 0; i < warmup; i++) sink = gson.fromJson(json, Observation.class) ;
+        long start = System.nanoTime() ;
+        for (int i = 0; i < runs; i++) sink = gson.fromJson(json, Observation.class) ;
+        long duration = System.nanoTime() - start ;
+        assertNotNull(sink) ;
+        return duration / 1000.0 / runs ;
+    }
+}
@@ -0,0 +1,167 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.exception.Iv4xrError;
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+import game.LabRecruitsSimulator;
+
+/**
+ * Checks that {@link NavMeshCache} gives back the same mesh as converting the
+ * one sent by the game, using {@link LabRecruitsSimulator} as the game.
+ */
+public class NavMeshCacheTest {
+
+    LabRecruitsSimulator simulator ;
+    Path dir ;
+
+    @BeforeEach
+    void start() throws Exception {
+        simulator = new LabRecruitsSimulator(0) ;
+        dir = Files.createTempDirectory("navmeshcache") ;
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        simulator.close() ;
+        try (var files = Files.walk(dir)) {
+            files.sorted((p, q) -> q.compareTo(p)).forEach(p -> p.toFile().delete()) ;
+        }
+    }
+
+    static void assertSameMesh(Mesh expected, Mesh actual) {
+        assertEquals(expected.vertices.toString(), actual.vertices.toString()) ;
+        assertEquals(expected.faces.size(), actual.faces.size()) ;
+        for (int i = 0; i < expected.faces.size(); i++)
+            assertTrue(Arrays.equals(expected.faces.get(i).vertices, actual.faces.get(i).vertices)) ;
+        assertEquals(expected.edges.size(), actual.edges.size()) ;
+        for (int i = 0; i < expected.edges.size(); i++) {
+            Iterator<Integer> e1 = expected.edges.get(i).iterator() ;
+            Iterator<Integer> e2 = actual.edges.get(i).iterator() ;
+            assertEquals(e1.next(), e2.next()) ;
+            assertEquals(e1.next(), e2.next()) ;
+        }
+    }
+
+    @Test
+    public void test_write_and_read() throws Exception {
+        var env = new LabRecruitsEnvironment(simulator.config("square2")) ;
+        Mesh mesh = env.worldNavigableMesh ;
+        env.close() ;
+        Path file = dir.resolve("square2.navmesh") ;
+        NavMeshCache.writeMesh(mesh, file);
+        assertSameMesh(mesh, NavMeshCache.readMesh(file)) ;
+    }
+
+    @Test
+    public void test_failed_store_leaves_no_file() throws Exception {
+        var config = simulator.config("square2") ;
+        var env = new LabRecruitsEnvironment(config) ;
+        Mesh mesh = env.worldNavigableMesh ;
+        env.close() ;
+        var cache = new NavMeshCache(dir) ;
+        // a directory in the way of the cache file:
+        Path file = cache.entry(config) ;
+        Files.createDirectories(file.resolve("in-the-way")) ;
+        cache.store(file, mesh) ;
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(file), files.collect(Collectors.toList())) ;
+        }
+    }
+
+    @Test
+    public void test_key_follows_level_content() throws Exception {
+        Path level = dir.resolve("tiny.csv") ;
+        Files.write(level, "|w,w,w\nw,f:a^agent0,w\nw,w,w\n".getBytes(StandardCharsets.UTF_8)) ;
+        var config = new LabRecruitsConfig("tiny", dir.toString()) ;
+        String key = NavMeshCache.key(config) ;
+        assertTrue(key.startsWith("tiny-")) ;
+        assertEquals(key, NavMeshCache.key(config)) ;
+        Files.write(level, "|w,w,w,w\nw,f:a^agent0,f,w\nw,w,w,w\n".getBytes(StandardCharsets.UTF_8)) ;
+        assertNotEquals(key, NavMeshCache.key(config)) ;
+    }
+
+    @Test
+    public void test_second_load_uses_cache() throws Exception {
+        var config = simulator.config("samira_8room") ;
+        config.navmesh_cache_dir = dir.toString() ;
+        var cache = new NavMeshCache(dir) ;
+        assertTrue(cache.load(config) == null) ;
+
+        long t0 = System.nanoTime() ;
+        var env = new LabRecruitsEnvironment(config) ;
+        long t1 = System.nanoTime() ;
+        Mesh converted = env.worldNavigableMesh ;
+        env.close() ;
+        assertTrue(Files.exists(cache.file(config))) ;
+
+        long t2 = System.nanoTime() ;
+        env = new LabRecruitsEnvironment(config) ;
+        long t3 = System.nanoTime() ;
+        assertSameMesh(converted, env.worldNavigableMesh) ;
+        // the game was asked not to send the mesh:
+        assertTrue(env.metrics().bytesIn(LabRecruitsEnvironment.LOADWORLD) < 16) ;
+        // only on the request; the configuration, which may be shared, is left as is:
+        assertTrue(config.send_navmesh) ;
+        // the environment still works after the load:
+        assertTrue(env.observe("agent1").position != null) ;
+        env.close() ;
+        System.out.println(String.format("load without cache: %.1f ms, with cache: %.1f ms",
+                (t1 - t0) / 1e6, (t3 - t2) / 1e6)) ;
+    }
+
+    @Test
+    public void test_game_dying_on_cached_load() throws Exception {
+        var config = simulator.config("square2") ;
+        config.navmesh_cache_dir = dir.toString() ;
+        new LabRecruitsEnvironment(config).close() ;
+        // a game that reads the INIT request, and then dies:
+        try (var server = new ServerSocket(0)) {
+            var game = new Thread(() -> {
+                try (var socket = server.accept()) {
+                    new BufferedReader(new InputStreamReader(socket.getInputStream())).readLine() ;
+                } catch (IOException e) {
+                }
+            }) ;
+            game.start() ;
+            config.port = server.getLocalPort() ;
+            assertThrows(Iv4xrError.class, () -> new LabRecruitsEnvironment(config)) ;
+            game.join() ;
+        }
+    }
+
+    @Test
+    public void test_off_heap_mesh() throws Exception {
+        var config = simulator.config("square2") ;
+        config.navmesh_cache_dir = dir.toString() ;
+        config.navmesh_off_heap = true ;
+        var env = new LabRecruitsEnvironment(config) ;
+        Mesh converted = env.worldNavigableMesh ;
+        env.close() ;
+
+        var cache = new NavMeshCache(dir) ;
+        Mesh m1 = cache.load(config) ;
+        assertSameMesh(converted, m1) ;
+        assertFalse(m1.vertices instanceof java.util.ArrayList) ;
+        env = new LabRecruitsEnvironment(config) ;
+        assertSameMesh(converted, env.worldNavigableMesh) ;
+        assertTrue(env.observe("agent0").position != null) ;
+        env.close() ;
+    }
+}
@@ -0,0 +1,95 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the NIO transport against a fake Lab Recruits that just sends back
+ * canned Json lines. No Lab Recruits is needed to run these tests.
+ */
+public class NioSocketReaderWriterTest {
+
+    static class Msg {
+        String text ;
+        int[] values ;
+    }
+
+    /**
+     * The fake server reads one request-line, and then responds with the given
+     * response, sent in small chunks to force the reader to assemble a line out of
+     * multiple reads.
+     */
+    static Thread fakeServer(ServerSocket server, String[] receivedRequest, String... responses) {
+        Thread t = new Thread(() -> {
+            try (Socket client = server.accept()) {
+                var in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8)) ;
+                OutputStream out = client.getOutputStream() ;
+                for (String response : responses) {
+                    receivedRequest[0] = in.readLine() ;
+                    byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8) ;
+                    for (int i = 0; i < bytes.length; i += 7) {
+                        out.write(bytes, i, Math.min(7, bytes.length - i)) ;
+                        out.flush() ;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }) ;
+        t.start();
+        return t ;
+    }
+
+    @Test
+    public void test_roundtrip() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            String[] received = new String[1] ;
+            // multi-byte chars, split over chunk boundaries:
+            Thread t = fakeServer(server, received,
+                    "{\"text\":\"héllo wörld €\",\"values\":[1,2,3]}",
+                    "{\"text\":\"second\",\"values\":[]}") ;
+            var rw = new NioSocketReaderWriter("localhost", server.getLocalPort()) ;
+
+            rw.write(Request.startSimulation());
+            Msg m = rw.read(Msg.class) ;
+            assertEquals("{\"cmd\":\"START\",\"arg\":null}", received[0]) ;
+            assertEquals("héllo wörld €", m.text) ;
+            assertArrayEquals(new int[] { 1, 2, 3 }, m.values);
+
+            rw.write(Request.pauseSimulation());
+            m = rw.read(Msg.class) ;
+            assertEquals("{\"cmd\":\"PAUSE\",\"arg\":null}", received[0]) ;
+            assertEquals("second", m.text) ;
+            t.join();
+            // the fake server has closed the connection:
+            assertNull(rw.read(Msg.class)) ;
+            rw.close();
+        }
+    }
+
+    @Test
+    public void test_line_larger_than_buffer() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            StringBuilder sb = new StringBuilder() ;
+            for (int i = 0; i < 50000; i++) sb.append("é") ;
+            String[] received = new String[1] ;
+            Thread t = fakeServer(server, received, "{\"text\":\"" + sb + "\",\"values\":[7]}") ;
+            var rw = new NioSocketReaderWriter("localhost", server.getLocalPort()) ;
+            rw.write(Request.startSimulation());
+            Msg m = rw.read(Msg.class) ;
+            assertEquals(sb.toString(), m.text) ;
+            assertArrayEquals(new int[] { 7 }, m.values);
+            t.join();
+            rw.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Vec3;
+
+/**
+ * Tests the pipelined sending of commands against {@link FakeLabRecruitsServer}.
+ */
+public class PipelinedCommandsTest {
+
+    @Test
+    public void test_pipelined_commands() throws Exception {
+        var server = new FakeLabRecruitsServer(3) ;
+        var config = server.config() ;
+        config.pipeline_window = 3 ;
+        var env = new LabRecruitsEnvironment(config) ;
+
+        List<AgentCommand> commands = new ArrayList<>() ;
+        for (int k = 0; k < 10; k++) {
+            commands.add(AgentCommand.moveTowardCommand("agent0", new Vec3(k, 0, 0))) ;
+        }
+        var observations = env.pipelineCommands(commands) ;
+        assertEquals(10, observations.size()) ;
+        for (int k = 0; k < 10; k++) {
+            // responses are matched in order:
+            assertEquals(k, observations.get(k).position.x, 0.001f) ;
+            assertEquals(k, observations.get(k).timestamp) ;
+        }
+        // the window was used, but never exceeded:
+        assertEquals(3, server.maxInFlight) ;
+
+        assertTrue(env.close()) ;
+        server.close() ;
+    }
+
+    @Test
+    public void test_pipelined_moves() throws Exception {
+        var server = new FakeLabRecruitsServer(2) ;
+        var config = server.config() ;
+        config.pipeline_window = 2 ;
+        var env = new LabRecruitsEnvironment(config) ;
+
+        List<Vec3> path = List.of(new Vec3(5, 0, 0), new Vec3(5, 0, 3)) ;
+        var observations = env.pipelineMoveAlong("agent0", new Vec3(0, 0, 0), path) ;
+        // 5 units at speed 2 takes 3 steps, and 3 units 2 more:
+        assertEquals(5, observations.size()) ;
+        var last = observations.get(4).position ;
+        assertTrue(Vec3.dist(last, new Vec3(5, 0.75f, 3)) < 0.001) ;
+        assertEquals(2, server.maxInFlight) ;
+
+        assertTrue(env.close()) ;
+        server.close() ;
+    }
+}
@@ -0,0 +1,224 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the classic socket transport against a fake Lab Recruits that just
+ * sends back canned Json lines. No Lab Recruits is needed to run these tests.
+ */
+public class SocketReaderWriterTest {
+
+    static class Msg {
+        String text ;
+        int[] values ;
+    }
+
+    /**
+     * The fake server sends all the given lines at once, as soon as a client
+     * connects.
+     */
+    static Thread fakeServer(ServerSocket server, String lines) {
+        Thread t = new Thread(() -> {
+            try (Socket client = server.accept()) {
+                OutputStream out = client.getOutputStream() ;
+                out.write(lines.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                // wait until the client closes:
+                client.getInputStream().read() ;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }) ;
+        t.start();
+        return t ;
+    }
+
+    void readMessages(boolean streaming) throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            StringBuilder big = new StringBuilder() ;
+            for (int i = 0; i < 20000; i++) big.append("ab") ;
+            Thread t = fakeServer(server,
+                    "{\"text\":\"one\",\"values\":[1,2]}\n"
+                    + "{\"text\":\"" + big + "\",\"values\":[3]}  \r\n"
+                    + "{\"text\":\"three\",\"values\":[]}\n") ;
+            var rw = new SocketReaderWriter("localhost", server.getLocalPort()) ;
+            rw.setStreaming(streaming);
+            Msg m = rw.read(Msg.class) ;
+            assertEquals("one", m.text) ;
+            assertArrayEquals(new int[] { 1, 2 }, m.values);
+            m = rw.read(Msg.class) ;
+            assertEquals(big.toString(), m.text) ;
+            assertArrayEquals(new int[] { 3 }, m.values);
+            m = rw.read(Msg.class) ;
+            assertEquals("three", m.text) ;
+            rw.close();
+            t.join();
+        }
+    }
+
+    @Test
+    public void test_read_lines() throws Exception {
+        readMessages(false) ;
+    }
+
+    @Test
+    public void test_streaming_read() throws Exception {
+        readMessages(true) ;
+    }
+
+    @Test
+    public void test_skip_on_a_closed_connection() throws Exception {
+        for (boolean nio : new boolean[] { false, true }) {
+            for (boolean binary : new boolean[] { false, true }) {
+                try (ServerSocket server = new ServerSocket(0)) {
+                    // the game goes away without answering:
+                    Thread t = new Thread(() -> {
+                        try {
+                            server.accept().close() ;
+                        } catch (IOException e) {
+                        }
+                    }) ;
+                    t.start() ;
+                    var rw = nio ? new NioSocketReaderWriter("localhost", server.getLocalPort())
+                            : new SocketReaderWriter("localhost", server.getLocalPort()) ;
+                    if (binary)
+                        rw.useBinaryFraming() ;
+                    assertFalse(rw.skip(), "nio " + nio + ", binary " + binary) ;
+                    rw.close() ;
+                    t.join() ;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_backoff() {
+        var strategy = new ConnectStrategy() ;
+        strategy.initial_backoff_ms = 10 ;
+        strategy.max_backoff_ms = 300 ;
+        strategy.jitter = 0.5 ;
+        for (int attempt = 1; attempt < 20; attempt++) {
+            long full = Math.min(300, 10L << (attempt - 1)) ;
+            long pause = strategy.backoff(attempt) ;
+            assertTrue(pause <= full && pause >= full / 2, "attempt " + attempt + ": " + pause) ;
+        }
+        strategy.jitter = 0 ;
+        assertEquals(40, strategy.backoff(3)) ;
+    }
+
+    @Test
+    public void test_connect_to_a_late_server() throws Exception {
+        int port ;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort() ;
+        }
+        // the server only comes up after 500 ms:
+        Thread t = new Thread(() -> {
+            try {
+                Thread.sleep(500) ;
+                try (ServerSocket server = new ServerSocket(port)) {
+                    fakeServer(server, "").join() ;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }) ;
+        t.start() ;
+        var strategy = new ConnectStrategy() ;
+        strategy.max_backoff_ms = 100 ;
+        var rw = new SocketReaderWriter("localhost", port, strategy) ;
+        assertTrue(rw.timeToReadyMillis() >= 400) ;
+        // not a busy loop:
+        assertTrue(rw.connectAttempts() > 1 && rw.connectAttempts() < 30, "" + rw.connectAttempts()) ;
+        rw.close() ;
+        t.join() ;
+    }
+
+    @Test
+    public void test_readiness_probe() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            // the first connection is accepted, but not served; the second one
+            // answers the probe, after which the client connects once more:
+            Thread t = new Thread(() -> {
+                try {
+                    server.accept().close() ;
+                    try (Socket client = server.accept()) {
+                        var request = new BufferedReader(new InputStreamReader(client.getInputStream())).readLine() ;
+                        assertTrue(request.contains("DISCONNECT"), request) ;
+                        client.getOutputStream().write("true\n".getBytes(StandardCharsets.UTF_8)) ;
+                        client.getOutputStream().flush() ;
+                        while (client.getInputStream().read() >= 0) ;
+                    }
+                    try (Socket client = server.accept()) {
+                        while (client.getInputStream().read() >= 0) ;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }) ;
+            t.start() ;
+            var strategy = new ConnectStrategy() ;
+            strategy.readiness_probe = true ;
+            var rw = new SocketReaderWriter("localhost", server.getLocalPort(), strategy) ;
+            assertEquals(2, rw.connectAttempts()) ;
+            rw.close() ;
+            t.join() ;
+        }
+        // nothing there at all:
+        var strategy = new ConnectStrategy() ;
+        strategy.deadline_ms = 300 ;
+        int port ;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort() ;
+        }
+        var rw = new SocketReaderWriter("localhost", port, strategy) ;
+        assertEquals(-1f, rw.timeToReadyMillis()) ;
+    }
+
+    void probeSilentGame(boolean nio) throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            // accepts connections, but never answers:
+            Thread t = new Thread(() -> {
+                try {
+                    while (true) {
+                        var client = server.accept() ;
+                        new Thread(() -> {
+                            try (client) {
+                                while (client.getInputStream().read() >= 0) ;
+                            } catch (IOException e) {
+                            }
+                        }).start() ;
+                    }
+                } catch (IOException e) {
+                    // the server is closed
+                }
+            }) ;
+            t.start() ;
+            var strategy = new ConnectStrategy() ;
+            strategy.readiness_probe = true ;
+            strategy.deadline_ms = 500 ;
+            long start = System.nanoTime() ;
+            var rw = nio ? new NioSocketReaderWriter("localhost", server.getLocalPort(), strategy)
+                    : new SocketReaderWriter("localhost", server.getLocalPort(), strategy) ;
+            long millis = (System.nanoTime() - start) / 1000000 ;
+            assertEquals(-1f, rw.timeToReadyMillis()) ;
+            assertTrue(millis >= 450 && millis < 2000, "" + millis) ;
+        }
+    }
+
+    @Test
+    public void test_probe_keeps_the_deadline() throws Exception {
+        probeSilentGame(false) ;
+        probeSilentGame(true) ;
+    }
+}
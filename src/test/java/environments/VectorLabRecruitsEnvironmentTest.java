@@ -0,0 +1,134 @@
+package environments;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.exception.Iv4xrError;
+import eu.iv4xr.framework.spatial.Vec3;
+import game.LabRecruitsSimulator;
+
+/**
+ * Runs a {@link VectorLabRecruitsEnvironment} over several simulated
+ * instances; the game itself is not needed.
+ */
+public class VectorLabRecruitsEnvironmentTest {
+
+    static AgentCommand[] moves(int n, Vec3 target) {
+        var commands = new AgentCommand[n] ;
+        for (int k = 0; k < n; k++) commands[k] = AgentCommand.moveTowardCommand("agent0", target, false) ;
+        return commands ;
+    }
+
+    @Test
+    public void test_lockstep_and_auto_reset() {
+        // an episode lasts three steps:
+        var vector = VectorLabRecruitsEnvironment.simulated(3, "square2", obs -> obs.timestamp >= 3) ;
+        assertEquals(3, vector.size()) ;
+        var start = vector.get(0).observe("agent0").position ;
+        var target = Vec3.add(start, new Vec3(-1, 0, 0)) ;
+        // observing took a turn; start from a fresh level:
+        vector.reset() ;
+        for (int step = 1; step <= 7; step++) {
+            var observations = vector.step(moves(3, target)) ;
+            assertEquals(3, observations.length) ;
+            for (int k = 0; k < 3; k++) {
+                assertEquals("agent0", observations[k].agentId) ;
+                assertEquals(observations[0].position.toString(), observations[k].position.toString()) ;
+                assertEquals(step % 3 == 0, vector.done()[k]) ;
+            }
+        }
+        assertArrayEquals(new int[] { 2, 2, 2 }, vector.episodes()) ;
+        // a null command leaves its instance alone:
+        var observations = vector.step(new AgentCommand[] { null, AgentCommand.doNothing("agent0"), null }) ;
+        assertNull(observations[0]) ;
+        assertNotNull(observations[1]) ;
+        vector.reset() ;
+        assertEquals(start.toString(), vector.get(2).observe("agent0").position.toString()) ;
+        assertTrue(vector.close()) ;
+    }
+
+    @Test
+    public void test_wrong_number_of_commands() {
+        var vector = VectorLabRecruitsEnvironment.simulated(2, "square2", null) ;
+        assertThrows(IllegalArgumentException.class, () -> vector.step(moves(3, new Vec3(1, 0, 1)))) ;
+        assertTrue(vector.close()) ;
+    }
+
+    @Test
+    public void test_failed_connect_closes_the_others() throws Exception {
+        var simulator = new LabRecruitsSimulator(0) ;
+        int port ;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort() ;
+        }
+        var missing = new LabRecruitsConfig("square2") ;
+        missing.port = port ;
+        missing.connect_strategy.deadline_ms = 300 ;
+        assertThrows(Iv4xrError.class,
+                () -> new VectorLabRecruitsEnvironment(List.of(simulator.config("square2"), missing), null)) ;
+        // the simulator serves one client at a time; it is free again only if the
+        // connection to it was closed:
+        var env = CompletableFuture.supplyAsync(() -> new LabRecruitsEnvironment(simulator.config("square2")))
+                .get(10, TimeUnit.SECONDS) ;
+        assertNotNull(env.observe("agent0")) ;
+        env.close() ;
+        simulator.close() ;
+    }
+
+    @Test
+    public void test_broken_instance_fails_the_step() throws Exception {
+        var simulator = new LabRecruitsSimulator(0) ;
+        try (ServerSocket server = new ServerSocket(0)) {
+            // a game that loads the level, and dies on the first command:
+            Thread game = new Thread(() -> {
+                try (Socket client = server.accept()) {
+                    var in = new BufferedReader(new InputStreamReader(client.getInputStream())) ;
+                    in.readLine() ;
+                    client.getOutputStream().write("{\"indices\":[],\"vertices\":[]}\n".getBytes(StandardCharsets.UTF_8)) ;
+                    client.getOutputStream().flush() ;
+                    in.readLine() ;
+                } catch (IOException e) {
+                }
+            }) ;
+            game.start() ;
+            var dying = new LabRecruitsConfig("square2") ;
+            dying.port = server.getLocalPort() ;
+            var vector = new VectorLabRecruitsEnvironment(List.of(simulator.config("square2"), dying), null) ;
+            var commands = new AgentCommand[] { AgentCommand.doNothing("agent0"), AgentCommand.doNothing("agent0") } ;
+            assertThrows(Iv4xrError.class, () -> vector.step(commands)) ;
+            game.join() ;
+            assertFalse(vector.close()) ;
+        }
+        simulator.close() ;
+    }
+
+    /**
+     * Prints the number of steps per second over all instances, for an
+     * increasing number of instances.
+     */
+    @Test
+    public void benchmark_steps() {
+        for (int n : new int[] { 1, 2, 4 }) {
+            var vector = VectorLabRecruitsEnvironment.simulated(n, "square2", obs -> obs.timestamp >= 50) ;
+            int steps = 500 ;
+            var commands = new AgentCommand[n] ;
+            for (int k = 0; k < n; k++) commands[k] = AgentCommand.doNothing("agent0") ;
+            long start = System.nanoTime() ;
+            for (int s = 0; s < steps; s++) vector.step(commands) ;
+            double seconds = (System.nanoTime() - start) / 1e9 ;
+            System.out.println(String.format(">>> %d instances: %.0f agent-steps/s", n, n * steps / seconds)) ;
+            assertTrue(vector.close()) ;
+        }
+    }
+}
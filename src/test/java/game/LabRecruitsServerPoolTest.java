@@ -0,0 +1,179 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import environments.LabRecruitsConfig;
+
+/**
+ * Checks the leasing, health checks and recycling of
+ * {@link LabRecruitsServerPool}, with simulators as the game instances.
+ */
+public class LabRecruitsServerPoolTest {
+
+    List<LabRecruitsSimulator> simulators = new ArrayList<>() ;
+
+    LabRecruitsServerPool pool(int size, int maxEpisodes) {
+        return new LabRecruitsServerPool(size, maxEpisodes, k -> {
+            try {
+                var simulator = new LabRecruitsSimulator(0) ;
+                simulators.add(simulator) ;
+                return simulator ;
+            } catch (Exception e) {
+                throw new RuntimeException(e) ;
+            }
+        }) ;
+    }
+
+    @Test
+    public void test_reuse_and_recycle() throws Exception {
+        var pool = pool(2, 3) ;
+        assertEquals(2, pool.launches()) ;
+        String[] levels = { "square2", "minimal" } ;
+        for (int k = 0; k < 6; k++) {
+            try (var lease = pool.lease(simulators.get(0).config(levels[k % 2]))) {
+                var obs = lease.environment().observe("agent0") ;
+                assertTrue(obs != null) ;
+                assertEquals(k % 2 == 0, obs.getElement("door0") != null) ;
+            }
+        }
+        // every worker served 3 leases, the maximum:
+        assertEquals(2, pool.launches()) ;
+        try (var lease = pool.lease(simulators.get(0).config("square2"))) {
+            assertTrue(lease.environment().observe("agent0") != null) ;
+        }
+        assertEquals(3, pool.launches()) ;
+        pool.close() ;
+        for (var simulator : simulators) assertFalse(simulator.isRunning()) ;
+    }
+
+    @Test
+    public void test_shared_config_is_not_changed() throws Exception {
+        var pool = pool(2, 0) ;
+        var config = simulators.get(0).config("square2") ;
+        config.port = 1 ;
+        try (var first = pool.lease(config) ; var second = pool.lease(config)) {
+            assertEquals(first.port(), first.environment().gameConfig().port) ;
+            assertEquals(second.port(), second.environment().gameConfig().port) ;
+            assertNotEquals(first.port(), second.port()) ;
+            assertEquals(1, config.port) ;
+        }
+        pool.close() ;
+    }
+
+    @Test
+    public void test_dead_instance_is_replaced() throws Exception {
+        var pool = pool(1, 0) ;
+        var config = simulators.get(0).config("square2") ;
+        try (var lease = pool.lease(config)) {
+            assertEquals(simulators.get(0).port(), lease.port()) ;
+        }
+        simulators.get(0).close() ;
+        try (var lease = pool.lease(config)) {
+            assertEquals(simulators.get(1).port(), lease.port()) ;
+            assertTrue(lease.environment().observe("agent0") != null) ;
+        }
+        assertEquals(2, pool.launches()) ;
+        pool.close() ;
+    }
+
+    /**
+     * A game whose process runs, but that never answers a request.
+     */
+    static class HungGame implements GameInstance {
+        final ServerSocket server ;
+        final List<Socket> clients = Collections.synchronizedList(new ArrayList<>()) ;
+
+        HungGame() throws IOException {
+            server = new ServerSocket(0) ;
+            new Thread(() -> {
+                try {
+                    while (true) clients.add(server.accept()) ;
+                } catch (IOException e) {
+                    // closed
+                }
+            }).start() ;
+        }
+
+        public int port() { return server.getLocalPort() ; }
+        public boolean isRunning() { return !server.isClosed() ; }
+        public void close() {
+            try {
+                server.close() ;
+                for (var client : clients) client.close() ;
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    @Test
+    public void test_hung_instance_is_replaced() throws Exception {
+        var hung = new HungGame() ;
+        // the first instance hangs, the next ones are simulators:
+        var pool = new LabRecruitsServerPool(1, 0, k -> {
+            if (hung.isRunning()) return hung ;
+            try {
+                var simulator = new LabRecruitsSimulator(0) ;
+                simulators.add(simulator) ;
+                return simulator ;
+            } catch (IOException e) {
+                throw new RuntimeException(e) ;
+            }
+        }) ;
+        pool.healthCheckMillis = 300 ;
+        try (var lease = pool.lease(new LabRecruitsConfig("square2"))) {
+            assertEquals(simulators.get(0).port(), lease.port()) ;
+        }
+        assertFalse(hung.isRunning()) ;
+        assertEquals(2, pool.launches()) ;
+        pool.close() ;
+    }
+
+    @Test
+    public void test_failed_launch_stops_the_others() {
+        assertThrows(RuntimeException.class, () -> new LabRecruitsServerPool(3, 0, k -> {
+            if (k == 2) throw new RuntimeException("no more games") ;
+            try {
+                var simulator = new LabRecruitsSimulator(0) ;
+                simulators.add(simulator) ;
+                return simulator ;
+            } catch (IOException e) {
+                throw new RuntimeException(e) ;
+            }
+        })) ;
+        assertEquals(2, simulators.size()) ;
+        for (var simulator : simulators) assertFalse(simulator.isRunning()) ;
+    }
+
+    @Test
+    public void test_lease_waits_for_a_free_worker() throws Exception {
+        var pool = pool(1, 0) ;
+        var config = simulators.get(0).config("square2") ;
+        var first = pool.lease(config) ;
+        var second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.lease(simulators.get(0).config("minimal")) ;
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e) ;
+            }
+        }) ;
+        Thread.sleep(200) ;
+        assertFalse(second.isDone()) ;
+        first.close() ;
+        var lease = second.get(10, TimeUnit.SECONDS) ;
+        assertTrue(lease.environment().observe("agent0").getElement("door0") == null) ;
+        lease.close() ;
+        assertEquals(1, pool.launches()) ;
+        pool.close() ;
+    }
+}
@@ -0,0 +1,188 @@
+package game;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import environments.AgentCommand;
+import environments.LabRecruitsEnvironment;
+import eu.iv4xr.framework.spatial.Vec3;
+import world.LabEntity;
+import world.LabWorldModel;
+
+/**
+ * Runs the environment against {@link LabRecruitsSimulator}, the pure-Java
+ * stand-in of the game; the game itself is not needed.
+ */
+public class LabRecruitsSimulatorTest {
+
+    LabRecruitsSimulator simulator ;
+
+    @BeforeEach
+    void start() throws Exception {
+        simulator = new LabRecruitsSimulator(0) ;
+    }
+
+    @AfterEach
+    void close() {
+        simulator.close() ;
+    }
+
+    @Test
+    public void test_level_parsing() {
+        var level = LabRecruitsLevel.parse(List.of(
+                "button0,door0",
+                "|w,w,w,w",
+                "w,f:a^agent0,f:b^button0,w",
+                "w,f:cb#0000ff^button1,f:d>s^door0,w",
+                "w,f:c>e:dhf,,w",
+                "|w,,,w")) ;
+        assertEquals(2, level.numberOfFloors()) ;
+        assertEquals(4, level.width()) ;
+        assertEquals(4, level.depth()) ;
+        assertEquals(List.of("door0"), level.links.get("button0")) ;
+        assertEquals(LabRecruitsLevel.Tile.EMPTY, level.tile(0, 3, 2)) ;
+        assertEquals(6, level.objects.size()) ;
+        var door = level.objects.get(3) ;
+        assertEquals("door0", door.id) ;
+        assertEquals('s', door.direction) ;
+        assertEquals(new Vec3(2, 0, 2).toString(), door.position().toString()) ;
+        assertEquals(1f, level.objects.get(2).color[2]) ;
+        // tiles 1..5 are walkable; the one with the chair is not:
+        var mesh = level.navMesh() ;
+        assertEquals(4 * 6, mesh.indices.length) ;
+        assertEquals(9, mesh.vertices.length) ;
+    }
+
+    @Test
+    public void test_all_levels_load() throws Exception {
+        var files = new java.io.File(Platform.LEVEL_PATH).listFiles((dir, name) -> name.endsWith(".csv")) ;
+        assertTrue(files.length > 0) ;
+        for (var file : files) {
+            var level = LabRecruitsLevel.load(file.getPath()) ;
+            assertTrue(level.navMesh().indices.length > 0, file.getName()) ;
+        }
+    }
+
+    @Test
+    public void test_observation() {
+        var env = new LabRecruitsEnvironment(simulator.config("minimal")) ;
+        assertTrue(env.worldNavigableMesh.faces.size() > 0) ;
+        LabWorldModel obs = env.observe("agent0") ;
+        assertEquals(new Vec3(1, 0.75f, 2).toString(), obs.position.toString()) ;
+        LabEntity b0 = obs.getElement("button0") ;
+        assertTrue(b0 != null) ;
+        assertTrue(b0.type.equals(LabEntity.SWITCH)) ;
+        assertFalse(b0.getBooleanProperty("isOn")) ;
+        assertTrue(obs.visibleNavigationNodes.length > 0) ;
+        assertTrue(env.close()) ;
+    }
+
+    @Test
+    public void test_short_view_distance() {
+        var config = simulator.config("square2") ;
+        config.view_distance = 5 ;
+        var env = new LabRecruitsEnvironment(config) ;
+        var obs = env.observe("agent0") ;
+        assertTrue(obs.getElement("button0") != null) ;
+        assertTrue(obs.getElement("button1") != null) ;
+        assertTrue(obs.getElement("button2") != null) ;
+        assertTrue(obs.getElement("door0") == null) ;
+        assertTrue(obs.getElement("escreen0") == null) ;
+        env.close() ;
+    }
+
+    /**
+     * Walk to button0 in square2, and toggle it; this opens door0.
+     */
+    boolean openDoor(LabRecruitsEnvironment env) {
+        var obs = env.observe("agent0") ;
+        var door0 = obs.getElement("door0") ;
+        assertFalse(door0.getBooleanProperty("isOpen")) ;
+        var button0 = obs.getElement("button0").position ;
+        for (int k = 0; k < 20; k++) {
+            if (Vec3.dist(obs.getFloorPosition(), new Vec3(button0.x, 0, button0.z)) < 0.3f) break ;
+            obs = env.moveToward("agent0", obs.position, button0) ;
+        }
+        obs = env.interact("agent0", "button0", "") ;
+        return obs.getElement("button0").getBooleanProperty("isOn")
+                && obs.getElement("door0").getBooleanProperty("isOpen") ;
+    }
+
+    @Test
+    public void test_interaction() {
+        var env = new LabRecruitsEnvironment(simulator.config("square2")) ;
+        assertTrue(openDoor(env)) ;
+        // walls stop the agent:
+        var obs = env.moveToward("agent0", new Vec3(4, 0.75f, 4), new Vec3(4, 0.75f, 12)) ;
+        obs = env.moveToward("agent0", obs.position, new Vec3(4, 0.75f, 12)) ;
+        obs = env.moveToward("agent0", obs.position, new Vec3(4, 0.75f, 12)) ;
+        obs = env.moveToward("agent0", obs.position, new Vec3(4, 0.75f, 12)) ;
+        obs = env.moveToward("agent0", obs.position, new Vec3(4, 0.75f, 12)) ;
+        obs = env.moveToward("agent0", obs.position, new Vec3(4, 0.75f, 12)) ;
+        assertTrue(obs.position.z > 8.5f && obs.position.z < 9.5f) ;
+        assertTrue(env.close()) ;
+    }
+
+    /**
+     * Moves both agents of square2 a few steps with stepAll, and returns their
+     * observations after every step.
+     */
+    List<Map<String, LabWorldModel>> stepBothAgents(boolean batch) {
+        var config = simulator.config("square2") ;
+        config.batch_commands = batch ;
+        var env = new LabRecruitsEnvironment(config) ;
+        List<Map<String, LabWorldModel>> steps = new ArrayList<>() ;
+        for (int k = 0; k < 4; k++) {
+            Map<String, AgentCommand> commands = new LinkedHashMap<>() ;
+            commands.put("agent1", AgentCommand.moveTowardCommand("agent1", new Vec3(4, 0.75f, 12), false)) ;
+            commands.put("agent0", AgentCommand.doNothing("agent0")) ;
+            steps.add(env.stepAll(commands)) ;
+        }
+        assertTrue(env.close()) ;
+        return steps ;
+    }
+
+    @Test
+    public void test_step_all() {
+        var batched = stepBothAgents(true) ;
+        var oneByOne = stepBothAgents(false) ;
+        assertEquals(4, batched.size()) ;
+        for (int k = 0; k < batched.size(); k++) {
+            assertEquals(List.of("agent1", "agent0"), new ArrayList<>(batched.get(k).keySet())) ;
+            for (var agent : List.of("agent0", "agent1")) {
+                assertEquals(agent, batched.get(k).get(agent).agentId) ;
+                assertEquals(oneByOne.get(k).get(agent).position.toString(), batched.get(k).get(agent).position.toString()) ;
+                assertEquals(oneByOne.get(k).get(agent).elements.keySet(), batched.get(k).get(agent).elements.keySet()) ;
+            }
+        }
+        // agent1 moved, agent0 stayed:
+        assertTrue(Vec3.dist(batched.get(0).get("agent1").position, batched.get(3).get("agent1").position) > 0.1f) ;
+        assertEquals(batched.get(0).get("agent0").position.toString(), batched.get(3).get("agent0").position.toString()) ;
+    }
+
+    /**
+     * Runs many short episodes, and prints how many per second the simulator
+     * (and the Java side) manages.
+     */
+    @Test
+    public void benchmark_episodes() {
+        int episodes = 200 ;
+        long start = System.nanoTime() ;
+        for (int k = 0; k < episodes; k++) {
+            var env = new LabRecruitsEnvironment(simulator.config("square2")) ;
+            assertTrue(openDoor(env)) ;
+            env.close() ;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9 ;
+        System.out.println(String.format(">>> %d episodes in %.2f s: %.0f episodes/minute",
+                episodes, seconds, episodes * 60 / seconds)) ;
+    }
+}
@@ -0,0 +1,51 @@
+package helperclasses;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void test_buckets() {
+        long previous = -1 ;
+        for (long v : new long[] { 0, 1, 127, 128, 129, 1000, 123456789, Long.MAX_VALUE }) {
+            int b = LatencyHistogram.bucket(v) ;
+            long high = LatencyHistogram.highestInBucket(b) ;
+            assertTrue(high >= v, "" + v) ;
+            assertTrue(high - v <= v / 64, "" + v) ;
+            assertTrue(high >= previous) ;
+            previous = high ;
+        }
+        // the buckets are contiguous:
+        for (int b = 1; b < 3000; b++)
+            assertEquals(b, LatencyHistogram.bucket(LatencyHistogram.highestInBucket(b - 1) + 1)) ;
+    }
+
+    @Test
+    public void test_percentiles() {
+        var h = new LatencyHistogram() ;
+        var rnd = new Random(1) ;
+        long[] values = new long[100000] ;
+        for (int i = 0; i < values.length; i++) {
+            // log-normal-ish latencies, from microseconds to tens of milliseconds:
+            values[i] = (long) Math.exp(7 + 3 * Math.abs(rnd.nextGaussian())) ;
+            h.record(values[i]) ;
+        }
+        Arrays.sort(values) ;
+        assertEquals(values.length, h.count()) ;
+        assertEquals(values[values.length - 1], h.max()) ;
+        for (double p : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1] ;
+            long approx = h.percentile(p) ;
+            assertTrue(approx >= exact && approx - exact <= exact / 64, p + ": " + exact + " vs " + approx) ;
+        }
+        assertEquals(Arrays.stream(values).average().getAsDouble(), h.mean(), 1e-6 * h.mean()) ;
+        h.reset() ;
+        assertEquals(0, h.count()) ;
+        assertEquals(0, h.percentile(50)) ;
+    }
+}
@@ -0,0 +1,32 @@
+package helperclasses;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void test_add_contains() {
+        var set = new LongHashSet(2) ;
+        var reference = new HashSet<Long>() ;
+        var rnd = new Random(3) ;
+        for (int i = 0; i < 10000; i++) {
+            long key = i % 7 == 0 ? Long.MIN_VALUE + rnd.nextInt(3) : LongHashSet.pack(rnd.nextInt(100), rnd.nextInt(100) - 50) ;
+            assertEquals(reference.add(key), set.add(key)) ;
+        }
+        assertEquals(reference.size(), set.size()) ;
+        for (long key : reference) assertTrue(set.contains(key)) ;
+        assertFalse(set.contains(LongHashSet.pack(100, 0))) ;
+    }
+
+    @Test
+    public void test_pack() {
+        assertEquals(0x0000000100000002L, LongHashSet.pack(1, 2)) ;
+        assertNotEquals(LongHashSet.pack(1, -1), LongHashSet.pack(0, -1)) ;
+        assertEquals(-1L, LongHashSet.pack(-1, -1)) ;
+    }
+}
@@ -0,0 +1,88 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import world.Observation.GameObject;
+
+/**
+ * Checks that applying delta observations to a world model gives the same
+ * result as applying the corresponding full observations.
+ */
+public class DeltaObservationTest {
+
+    static Observation copyWith(Observation obs, GameObject[] objects, int tick) {
+        var o = new Observation() ;
+        o.agent = obs.agent ;
+        o.meta = new Observation.Meta() ;
+        o.meta.tick = tick ;
+        o.meta.time = obs.meta.time ;
+        o.objects = objects ;
+        o.navMeshIndices = obs.navMeshIndices ;
+        return o ;
+    }
+
+    @Test
+    public void test_delta_merge() {
+        var first = ObservationSamples.sample(50, 1) ;
+        first.agent.position.y = 0 ;
+
+        // the next tick: objects 0..9 go out of view, door 20 changes state, and
+        // a new object comes into view:
+        List<GameObject> nextObjects = new ArrayList<>(Arrays.asList(first.objects).subList(10, 50)) ;
+        var door = ObservationSamples.gameObject(20, new java.util.Random(0)) ;
+        door.transform.position = first.objects[20].transform.position ;
+        door.colliders = first.objects[20].colliders ;
+        door.Toggleable.isActive = ! first.objects[20].Toggleable.isActive ;
+        nextObjects.set(10, door) ;
+        var newcomer = ObservationSamples.gameObject(50, new java.util.Random(0)) ;
+        nextObjects.add(newcomer) ;
+
+        var fullNext = copyWith(first, nextObjects.toArray(new GameObject[0]), 43) ;
+        var deltaNext = copyWith(first, new GameObject[] { door, newcomer }, 43) ;
+        deltaNext.delta = true ;
+        deltaNext.removed = new String[10] ;
+        for (int i = 0; i < 10; i++) deltaNext.removed[i] = first.objects[i].id ;
+
+        // the agent's model, kept up to date with full observations:
+        var womFull = Observation.toWorldModel(first) ;
+        var changedFull = womFull.mergeNewObservation(Observation.toWorldModel(fullNext)) ;
+        // and with delta observations:
+        first.agent.position.y = 0 ;
+        var womDelta = Observation.toWorldModel(first) ;
+        var deltaWom = Observation.toWorldModel(deltaNext) ;
+        assertTrue(deltaWom.isDelta) ;
+        assertEquals(2, deltaWom.elements.size()) ;
+        var changedDelta = womDelta.mergeNewObservation(deltaWom) ;
+
+        assertEquals(womFull.visibleObjects, womDelta.visibleObjects) ;
+        assertEquals(41, womDelta.visibleObjects.size()) ;
+        assertFalse(womDelta.visibleObjects.containsKey(first.objects[0].id)) ;
+        assertEquals(womFull.elements.keySet(), womDelta.elements.keySet()) ;
+        for (var e : womFull.elements.values()) {
+            assertEquals(e.properties, womDelta.getElement(e.id).properties) ;
+        }
+        // only what changed is processed:
+        assertEquals(2, changedDelta.size()) ;
+        assertTrue(changedFull.size() > changedDelta.size()) ;
+        var d = womDelta.getElement(Observation.constructId(door)) ;
+        assertEquals(door.Toggleable.isActive, d.getBooleanProperty("isOpen")) ;
+        assertEquals(43, d.timestamp) ;
+
+        // a full observation again resets what is in view:
+        womDelta.mergeNewObservation(Observation.toWorldModel(copyWith(first, new GameObject[] { door }, 44))) ;
+        assertEquals(1, womDelta.visibleObjects.size()) ;
+
+        // a model that only ever merges gets its own map on the first merge:
+        var model = new LabWorldModel() ;
+        assertTrue(model.visibleObjects.isEmpty()) ;
+        model.mergeNewObservation(Observation.toWorldModel(deltaNext)) ;
+        assertEquals(2, model.visibleObjects.size()) ;
+        assertTrue(new LabWorldModel().visibleObjects.isEmpty()) ;
+    }
+}
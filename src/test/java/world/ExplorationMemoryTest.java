@@ -0,0 +1,101 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.meshes.Edge;
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+
+/**
+ * Checks the seen nodes and the frontier kept by {@link ExplorationMemory}
+ * against recomputing them from the mesh.
+ */
+public class ExplorationMemoryTest {
+
+    static Set<Integer> frontierByScan(Mesh mesh, Set<Integer> seen) {
+        Set<Integer> frontier = new TreeSet<>() ;
+        for (Edge e : mesh.edges) {
+            if (seen.contains(e.i) && !seen.contains(e.j)) frontier.add(e.j) ;
+            if (seen.contains(e.j) && !seen.contains(e.i)) frontier.add(e.i) ;
+        }
+        return frontier ;
+    }
+
+    static Set<Integer> set(int[] nodes) {
+        Set<Integer> s = new TreeSet<>() ;
+        for (int v : nodes) s.add(v) ;
+        return s ;
+    }
+
+    @Test
+    public void test_frontier() {
+        Mesh mesh = LabRecruitsRawNavMeshTest.gridMesh(20, 1).covertToMesh() ;
+        var memory = new ExplorationMemory() ;
+        var rnd = new Random(1) ;
+        Set<Integer> seen = new HashSet<>() ;
+        // some nodes are seen before the mesh is known:
+        int[] early = { 0, 1, 2 } ;
+        memory.markVisible(early);
+        seen.addAll(set(early)) ;
+        assertEquals(0, memory.frontierSize()) ;
+        memory.setNavMesh(mesh);
+        assertEquals(frontierByScan(mesh, seen), set(memory.frontierNodes())) ;
+        for (int tick = 0; tick < 50; tick++) {
+            int[] visible = new int[10] ;
+            for (int k = 0; k < visible.length; k++) visible[k] = rnd.nextInt(mesh.vertices.size()) ;
+            memory.markVisible(visible);
+            seen.addAll(set(visible)) ;
+            assertEquals(seen.size(), memory.seenCount()) ;
+            var frontier = frontierByScan(mesh, seen) ;
+            assertEquals(frontier, set(memory.frontierNodes())) ;
+            assertEquals(frontier.size(), memory.frontierSize()) ;
+        }
+        for (int v : seen) {
+            assertTrue(memory.isSeen(v)) ;
+            assertFalse(memory.isFrontier(v)) ;
+        }
+    }
+
+    @Test
+    public void test_merged_observations_accumulate() {
+        var model = new LabWorldModel() ;
+        var obs = new LabWorldModel() ;
+        obs.visibleNavigationNodes = new int[] { 1, 2, 3 } ;
+        model.mergeNewObservation(obs) ;
+        obs = new LabWorldModel() ;
+        obs.visibleNavigationNodes = new int[] { 3, 4 } ;
+        model.mergeNewObservation(obs) ;
+        assertArrayEquals(new int[] { 3, 4 }, model.visibleNavigationNodes) ;
+        assertEquals(4, model.exploration().seenCount()) ;
+        assertTrue(model.exploration().isSeen(1)) ;
+        assertFalse(model.exploration().isSeen(0)) ;
+    }
+
+    @Test
+    public void benchmark_marking() {
+        Mesh mesh = LabRecruitsRawNavMeshTest.gridMesh(300, 2).covertToMesh() ;
+        var memory = new ExplorationMemory() ;
+        memory.setNavMesh(mesh);
+        var rnd = new Random(2) ;
+        int ticks = 10000 ;
+        int[][] visible = new int[ticks][200] ;
+        for (var nodes : visible)
+            for (int k = 0; k < nodes.length; k++) nodes[k] = rnd.nextInt(mesh.vertices.size()) ;
+        long start = System.nanoTime() ;
+        int frontier = 0 ;
+        for (var nodes : visible) {
+            memory.markVisible(nodes);
+            frontier += memory.frontierSize() ;
+        }
+        double t = (System.nanoTime() - start) / 1e3 / ticks ;
+        assertTrue(frontier > 0) ;
+        System.out.println(String.format(">>> %d nodes, 200 visible per tick: %.1f us per tick to mark and count the frontier",
+                mesh.vertices.size(), t)) ;
+    }
+}
@@ -0,0 +1,83 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.meshes.Mesh;
+
+/**
+ * Checks that a {@link FlatNavMesh}, on the heap or memory-mapped, gives back
+ * the mesh it was made from, and compares the heap used by both forms on a
+ * large synthetic mesh.
+ */
+public class FlatNavMeshTest {
+
+    static void assertSameMesh(Mesh expected, Mesh actual) {
+        assertEquals(expected.vertices.toString(), actual.vertices.toString()) ;
+        assertEquals(expected.faces.size(), actual.faces.size()) ;
+        for (int i = 0; i < expected.faces.size(); i++)
+            assertTrue(Arrays.equals(expected.faces.get(i).vertices, actual.faces.get(i).vertices)) ;
+        assertEquals(expected.edges.toString(), actual.edges.toString()) ;
+    }
+
+    @Test
+    public void test_flatten() {
+        Mesh mesh = LabRecruitsRawNavMeshTest.gridMesh(20, 1).covertToMesh() ;
+        var flat = FlatNavMesh.of(mesh) ;
+        assertEquals(mesh.vertices.size(), flat.vertexCount()) ;
+        assertEquals(mesh.faces.size(), flat.triangleCount()) ;
+        assertEquals(mesh.edges.size(), flat.edgeCount()) ;
+        assertEquals(mesh.vertices.get(7).x, flat.x(7)) ;
+        assertSameMesh(mesh, flat.asMesh()) ;
+        assertSameMesh(mesh, flat.toMesh()) ;
+        assertThrows(IndexOutOfBoundsException.class, () -> flat.asMesh().vertices.get(flat.vertexCount())) ;
+        assertThrows(UnsupportedOperationException.class, () -> flat.asMesh().faces.clear()) ;
+    }
+
+    @Test
+    public void test_map() throws Exception {
+        Mesh mesh = LabRecruitsRawNavMeshTest.gridMesh(20, 2).covertToMesh() ;
+        Path file = Files.createTempFile("flatnavmesh", ".navmesh") ;
+        try {
+            FlatNavMesh.of(mesh).write(file);
+            assertSameMesh(mesh, FlatNavMesh.map(file).asMesh()) ;
+            assertSameMesh(mesh, FlatNavMesh.read(file).asMesh()) ;
+            Files.write(file, new byte[] { 1, 2, 3 }) ;
+            assertThrows(java.io.IOException.class, () -> FlatNavMesh.read(file)) ;
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    static long usedHeap() {
+        var rt = Runtime.getRuntime() ;
+        for (int k = 0; k < 3; k++) System.gc();
+        return rt.totalMemory() - rt.freeMemory() ;
+    }
+
+    @Test
+    public void benchmark_heap() throws Exception {
+        Path file = Files.createTempFile("flatnavmesh", ".navmesh") ;
+        try {
+            FlatNavMesh.of(LabRecruitsRawNavMeshTest.gridMesh(300, 3).covertToMesh()).write(file);
+            long before = usedHeap() ;
+            Mesh mesh = FlatNavMesh.read(file).toMesh() ;
+            long objects = usedHeap() - before ;
+            before = usedHeap() ;
+            FlatNavMesh mapped = FlatNavMesh.map(file) ;
+            long flat = usedHeap() - before ;
+            assertEquals(mesh.faces.size(), mapped.triangleCount()) ;
+            System.out.println(String.format(">>> %d triangles: %.1f MB of heap as Mesh, %.1f MB as mapped FlatNavMesh",
+                    mesh.faces.size(), objects / 1e6, flat / 1e6)) ;
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+}
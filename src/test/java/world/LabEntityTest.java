@@ -0,0 +1,41 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Line;
+import eu.iv4xr.framework.spatial.Vec3;
+
+/**
+ * Checks that LabEntity keeps its collision box until the entity moves or
+ * changes size.
+ */
+public class LabEntityTest {
+
+    @Test
+    public void test_collision_box_is_cached() {
+        var door = SpatialIndexTest.entity("door0", LabEntity.DOOR, new Vec3(5, 1, 5), new Vec3(0.5f, 1, 0.1f), 1) ;
+        var box = door.collisionBox() ;
+        assertEquals(new Vec3(5, 0, 5).toString(), box.center.toString()) ;
+        assertEquals(new Vec3(1.1f, 2, 0.3f).toString(), box.width.toString()) ;
+        assertTrue(door.collisionBox() == box) ;
+        // the entity moves:
+        door.position.x = 6 ;
+        var moved = door.collisionBox() ;
+        assertTrue(moved != box) ;
+        assertEquals(new Vec3(6, 0, 5).toString(), moved.center.toString()) ;
+        assertTrue(door.collisionBox() == moved) ;
+        // ... or its extent is replaced:
+        door.extent = new Vec3(1, 1, 1) ;
+        assertEquals(new Vec3(2.1f, 2, 2.1f).toString(), door.collisionBox().width.toString()) ;
+    }
+
+    @Test
+    public void test_no_intersections_for_non_blocking_types() {
+        var button = SpatialIndexTest.entity("button0", LabEntity.SWITCH, new Vec3(5, 0, 5), new Vec3(0.5f), 1) ;
+        var line = new Line(new Vec3(0, 0, 5), new Vec3(10, 0, 5)) ;
+        assertTrue(button.intersect(line).isEmpty()) ;
+        assertTrue(button.intersect(line) == button.intersect(line)) ;
+    }
+}
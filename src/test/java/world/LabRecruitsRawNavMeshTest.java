@@ -0,0 +1,227 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import eu.iv4xr.framework.spatial.meshes.Edge;
+
+/**
+ * Checks the fixing of broken nav-meshes against the original pairwise
+ * implementation, and times it on a large synthetic mesh.
+ */
+public class LabRecruitsRawNavMeshTest {
+
+    /**
+     * The original O(n^2) fix, as the reference.
+     */
+    static void fixPairwise(LabRecruitsRawNavMesh mesh) {
+        int[] indices = mesh.indices ;
+        Vec3[] vertices = mesh.vertices ;
+        float epsilon = 0.001f ;
+        for(int i=0; i< indices.length; i++) {
+            for(int j=i+1; j< indices.length; j++) {
+                int k = indices[i];
+                int n = indices[j];
+                if(Vec3.dist(vertices[k], vertices[n]) <= epsilon && k != n) {
+                    indices[j] = k;
+                }
+            }
+        }
+    }
+
+    /**
+     * A grid of size x size tiles, two triangles each, like Unity sends it:
+     * some corners are split into twins that lie very close to each other.
+     */
+    static LabRecruitsRawNavMesh gridMesh(int size, long seed) {
+        var rnd = new Random(seed) ;
+        List<Vec3> vertices = new ArrayList<>() ;
+        int[][] corner = new int[size + 1][size + 1] ;
+        int[][] twin = new int[size + 1][size + 1] ;
+        for (int x = 0; x <= size; x++) {
+            for (int z = 0; z <= size; z++) {
+                corner[x][z] = vertices.size() ;
+                vertices.add(new Vec3(x * 0.5f, 0, z * 0.5f)) ;
+                twin[x][z] = corner[x][z] ;
+                if (rnd.nextInt(10) == 0) {
+                    twin[x][z] = vertices.size() ;
+                    vertices.add(new Vec3(x * 0.5f + 0.0005f, 0, z * 0.5f - 0.0003f)) ;
+                }
+            }
+        }
+        int[] indices = new int[size * size * 6] ;
+        int n = 0 ;
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                int[][] c = rnd.nextBoolean() ? corner : twin ;
+                int a = c[x][z], b = c[x + 1][z], d = c[x + 1][z + 1], e = c[x][z + 1] ;
+                indices[n++] = a ; indices[n++] = b ; indices[n++] = d ;
+                indices[n++] = a ; indices[n++] = d ; indices[n++] = e ;
+            }
+        }
+        return new LabRecruitsRawNavMesh(indices, vertices.toArray(new Vec3[0])) ;
+    }
+
+    /**
+     * Points on a lattice finer than epsilon, so that they form chains of close
+     * points, where "close" is not transitive.
+     */
+    static LabRecruitsRawNavMesh clusteredMesh(int numberOfVertices, int numberOfIndices, long seed) {
+        var rnd = new Random(seed) ;
+        Vec3[] vertices = new Vec3[numberOfVertices] ;
+        for (int i = 0; i < numberOfVertices; i++) {
+            vertices[i] = new Vec3(rnd.nextInt(12) * 0.0004f, rnd.nextInt(3) * 0.0004f, rnd.nextInt(3) * 0.0004f) ;
+        }
+        int[] indices = new int[numberOfIndices] ;
+        for (int i = 0; i < numberOfIndices; i++) indices[i] = rnd.nextInt(numberOfVertices) ;
+        return new LabRecruitsRawNavMesh(indices, vertices) ;
+    }
+
+    void checkSameAsPairwise(LabRecruitsRawNavMesh mesh) {
+        var reference = new LabRecruitsRawNavMesh(mesh.indices.clone(), mesh.vertices) ;
+        fixPairwise(reference) ;
+        mesh.fix_broken_navmesh() ;
+        assertArrayEquals(reference.indices, mesh.indices) ;
+    }
+
+    @Test
+    public void test_same_merges_as_pairwise() {
+        for (int seed = 0; seed < 5; seed++) {
+            checkSameAsPairwise(gridMesh(20, seed)) ;
+            checkSameAsPairwise(clusteredMesh(60, 300, seed)) ;
+        }
+        // the twins are actually merged:
+        var mesh = gridMesh(3, 1) ;
+        mesh.fix_broken_navmesh() ;
+        for (int i : mesh.indices) assertTrue(mesh.vertices[i].x * 2 == Math.round(mesh.vertices[i].x * 2)) ;
+    }
+
+    /**
+     * The original edge construction, as the reference.
+     */
+    static List<Edge> edgesPairwise(int[] indices) {
+        List<Edge> edges = new ArrayList<>() ;
+        for (int vstart = 0; vstart + 2 < indices.length; vstart += 3) {
+            for (int from = vstart; from < vstart + 3; from++) {
+                for (int to = from + 1; to < vstart + 3; to++) {
+                    Edge e = new Edge(indices[from], indices[to]);
+                    if (!edges.contains(e)) edges.add(e);
+                }
+            }
+        }
+        return edges ;
+    }
+
+    @Test
+    public void test_convert() {
+        var raw = gridMesh(15, 2) ;
+        var mesh = raw.covertToMesh() ;
+        assertEquals(raw.vertices.length, mesh.vertices.size()) ;
+        assertEquals(raw.indices.length / 3, mesh.faces.size()) ;
+        var expected = edgesPairwise(raw.indices) ;
+        assertEquals(expected.size(), mesh.edges.size()) ;
+        int k = 0 ;
+        for (Edge e : mesh.edges) {
+            assertEquals(expected.get(k).i, e.i) ;
+            assertEquals(expected.get(k).j, e.j) ;
+            k++ ;
+        }
+        // duplicate vertices are still refused; -0 and 0 are the same:
+        var broken = new LabRecruitsRawNavMesh(new int[] { 0, 1, 2 },
+                new Vec3[] { new Vec3(0, 0, 0), new Vec3(1, 0, 0), new Vec3(-0f, 0, 0) }) ;
+        assertThrows(IllegalArgumentException.class, () -> broken.covertToMesh()) ;
+    }
+
+    @Test
+    public void benchmark_convert() {
+        var raw = gridMesh(224, 7) ;
+        long start = System.nanoTime() ;
+        var mesh = raw.covertToMesh() ;
+        double t = (System.nanoTime() - start) / 1e6 ;
+        System.out.println(String.format(">>> converting %d triangles (%d edges): %.1f ms",
+                mesh.faces.size(), mesh.edges.size(), t)) ;
+    }
+
+    @Test
+    public void benchmark_fix() {
+        // 224 x 224 tiles is about 100k triangles:
+        var large = gridMesh(224, 7) ;
+        long start = System.nanoTime() ;
+        large.fix_broken_navmesh() ;
+        double tGrid = (System.nanoTime() - start) / 1e6 ;
+        // the pairwise fix is too slow for that; time it on a 40 x 40 grid:
+        var small = gridMesh(40, 7) ;
+        start = System.nanoTime() ;
+        fixPairwise(small) ;
+        double tPairwise = (System.nanoTime() - start) / 1e6 ;
+        System.out.println(String.format(
+                ">>> grid-hash fix on %d triangles: %.1f ms; pairwise fix on %d triangles: %.1f ms",
+                large.indices.length / 3, tGrid, small.indices.length / 3, tPairwise)) ;
+    }
+
+    void checkParallelSameAsSerial(LabRecruitsRawNavMesh raw) {
+        var copy = new LabRecruitsRawNavMesh(raw.indices.clone(), raw.vertices) ;
+        var serial = raw.covertToMesh(false) ;
+        var parallel = copy.covertToMesh(true) ;
+        assertArrayEquals(raw.indices, copy.indices) ;
+        assertEquals(serial.vertices, parallel.vertices) ;
+        assertEquals(serial.faces.size(), parallel.faces.size()) ;
+        for (int k = 0; k < serial.faces.size(); k++)
+            assertArrayEquals(serial.faces.get(k).vertices, parallel.faces.get(k).vertices) ;
+        assertEquals(serial.edges.size(), parallel.edges.size()) ;
+        for (int k = 0; k < serial.edges.size(); k++) {
+            assertEquals(serial.edges.get(k).i, parallel.edges.get(k).i) ;
+            assertEquals(serial.edges.get(k).j, parallel.edges.get(k).j) ;
+        }
+    }
+
+    /**
+     * As clusteredMesh, but without duplicate vertices, which the conversion
+     * refuses.
+     */
+    static LabRecruitsRawNavMesh distinctClusteredMesh(int numberOfIndices, long seed) {
+        var rnd = new Random(seed) ;
+        List<Vec3> lattice = new ArrayList<>() ;
+        for (int x = 0; x < 12; x++)
+            for (int y = 0; y < 3; y++)
+                for (int z = 0; z < 3; z++)
+                    lattice.add(new Vec3(x * 0.0004f, y * 0.0004f, z * 0.0004f)) ;
+        java.util.Collections.shuffle(lattice, rnd) ;
+        Vec3[] vertices = lattice.subList(0, 60).toArray(new Vec3[60]) ;
+        int[] indices = new int[numberOfIndices] ;
+        for (int i = 0; i < numberOfIndices; i++) indices[i] = rnd.nextInt(vertices.length) ;
+        return new LabRecruitsRawNavMesh(indices, vertices) ;
+    }
+
+    @Test
+    public void test_parallel_convert() {
+        for (int seed = 0; seed < 5; seed++) {
+            checkParallelSameAsSerial(gridMesh(60, seed)) ;
+            checkParallelSameAsSerial(distinctClusteredMesh(300, seed)) ;
+        }
+        checkParallelSameAsSerial(new LabRecruitsRawNavMesh(new int[0], new Vec3[0])) ;
+        var broken = new LabRecruitsRawNavMesh(new int[] { 0, 1, 2 },
+                new Vec3[] { new Vec3(0, 0, 0), new Vec3(1, 0, 0), new Vec3(-0f, 0, 0) }) ;
+        assertThrows(IllegalArgumentException.class, () -> broken.covertToMesh(true)) ;
+    }
+
+    @Test
+    public void benchmark_parallel_convert() {
+        var raw = gridMesh(500, 7) ;
+        var copy = new LabRecruitsRawNavMesh(raw.indices.clone(), raw.vertices) ;
+        long start = System.nanoTime() ;
+        raw.covertToMesh(false) ;
+        double tSerial = (System.nanoTime() - start) / 1e6 ;
+        start = System.nanoTime() ;
+        copy.covertToMesh(true) ;
+        double tParallel = (System.nanoTime() - start) / 1e6 ;
+        System.out.println(String.format(">>> converting %d triangles: serial %.1f ms, parallel %.1f ms (%d threads)",
+                raw.indices.length / 3, tSerial, tParallel, java.util.concurrent.ForkJoinPool.getCommonPoolParallelism())) ;
+    }
+}
@@ -0,0 +1,162 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.Observation.GameObject;
+
+/**
+ * Checks the conversion of game objects to entities against the original,
+ * lambda-based conversion, and compares how much both allocate per
+ * observation.
+ */
+public class ObservationConversionTest {
+
+    /**
+     * The original conversion, as the reference.
+     */
+    static LabEntity toWorldEntityWithBuilder(GameObject obj) {
+        String we_type = "" ;
+        Function<LabEntity, LabEntity> builder = we -> {
+            we.position = obj.transform.position ;
+            we.extent = Vec3.zero() ;
+            return we ;
+        } ;
+        if (obj.colliders != null && obj.colliders.length > 0) {
+            builder = builder.andThen(we -> {
+                we.position = obj.colliders[0].center ;
+                we.extent = Vec3.mul(obj.colliders[0].size, 0.5f) ;
+                we.extent.x = Math.abs(we.extent.x) ;
+                we.extent.y = Math.abs(we.extent.y) ;
+                we.extent.z = Math.abs(we.extent.z) ;
+                return we ;
+            }) ;
+        }
+        if (obj.tag.equals("Door") && obj.Toggleable != null) {
+            we_type = LabEntity.DOOR ;
+            builder = builder.andThen(we -> { we.properties.put("isOpen", obj.Toggleable.isActive) ; return we ; }) ;
+        } else if (obj.tag.equals("Switch") && obj.Interactable != null) {
+            we_type = LabEntity.SWITCH ;
+            if (obj.Toggleable != null)
+                builder = builder.andThen(we -> { we.properties.put("isOn", obj.Toggleable.isActive) ; return we ; }) ;
+            else
+                builder = builder.andThen(we -> { we.properties.put("isOn", false) ; return we ; }) ;
+            if (obj.Colorized != null)
+                builder = builder.andThen(we -> { we.properties.put("color", obj.Colorized.color) ; return we ; }) ;
+        } else if (obj.tag.equals("ColorScreen") && obj.ColorScreen != null) {
+            we_type = LabEntity.COLORSCREEN ;
+            builder = builder.andThen(we -> { we.properties.put("color", obj.ColorScreen.color) ; return we ; }) ;
+        } else if (obj.tag.equals("Goal")) {
+            we_type = LabEntity.GOAL ;
+        } else if (obj.FireHazard != null) {
+            we_type = LabEntity.FIREHAZARD ;
+        }
+        return builder.apply(new LabEntity(Observation.constructId(obj), we_type, true)) ;
+    }
+
+    @Test
+    public void test_same_as_builder() {
+        var rnd = new Random(3) ;
+        for (int i = 0; i < 200; i++) {
+            var obj = ObservationSamples.gameObject(i, rnd) ;
+            if (i % 7 == 1) obj.Toggleable = null ;
+            if (i % 11 == 0) obj.tag = "Goal" ;
+            var expected = toWorldEntityWithBuilder(obj) ;
+            var actual = Observation.toWorldEntity(obj) ;
+            assertEquals(expected.id, actual.id) ;
+            assertEquals(expected.type, actual.type) ;
+            assertEquals(!actual.type.isEmpty(), actual.dynamic) ;
+            assertEquals(expected.position.toString(), actual.position.toString()) ;
+            assertEquals(expected.extent.toString(), actual.extent.toString()) ;
+            assertEquals(expected.properties, actual.properties) ;
+        }
+        assertTrue(Observation.toWorldEntity(null) == null) ;
+    }
+
+    @Test
+    public void test_static_entities_are_merged_once() {
+        var model = new LabWorldModel() ;
+        var first = Observation.toWorldModel(ObservationSamples.sample(50, 1)) ;
+        model.mergeNewObservation(first) ;
+        // the same objects, seen again in the next tick:
+        var obs = ObservationSamples.sample(50, 1) ;
+        obs.meta.tick = 43 ;
+        var impacted = model.mergeNewObservation(Observation.toWorldModel(obs)) ;
+        int statics = 0 ;
+        for (var e : first.elements.values()) {
+            if (e.dynamic) {
+                assertTrue(model.getElement(e.id) != e) ;
+                assertEquals(43, model.getElement(e.id).timestamp) ;
+            }
+            else {
+                statics++ ;
+                assertEquals(LabEntity.class, e.getClass()) ;
+                assertTrue(model.getElement(e.id) == e) ;
+                assertEquals(42, e.timestamp) ;
+                assertFalse(impacted.contains(e)) ;
+            }
+        }
+        assertTrue(statics > 0) ;
+        // but they are still listed as visible:
+        assertEquals(50, model.visibleObjects.size()) ;
+    }
+
+    @Test
+    public void test_cached_ids() {
+        var rnd = new Random(5) ;
+        var chair = ObservationSamples.gameObject(4, rnd) ;
+        var fire = ObservationSamples.gameObject(3, rnd) ;
+        String chairId = Observation.constructId(chair) ;
+        assertEquals("Chair@" + chair.transform.position, chairId) ;
+        assertEquals("FireHazard@" + fire.transform.position, Observation.constructId(fire)) ;
+        // a new copy of the same object, as in the next observation, gets the same
+        // String instance:
+        var chair2 = ObservationSamples.gameObject(4, new Random(5)) ;
+        assertTrue(chairId == Observation.constructId(chair2)) ;
+        // ... but not if the object has moved, or was renamed:
+        chair2.transform.position = new Vec3(-1, 0, -1) ;
+        assertEquals("Chair@" + chair2.transform.position, Observation.constructId(chair2)) ;
+        chair2.name = "TablePrefab(Clone)" ;
+        assertEquals("Table@" + chair2.transform.position, Observation.constructId(chair2)) ;
+        // -0.0 equals 0.0, but gives another id:
+        chair2.transform.position = new Vec3(-1, -0f, -1) ;
+        assertEquals("Table@" + chair2.transform.position, Observation.constructId(chair2)) ;
+        // objects without a Unity id still get an id:
+        chair2.id = null ;
+        assertEquals("Table@" + chair2.transform.position, Observation.constructId(chair2)) ;
+    }
+
+    // the bytes allocated by the current thread so far, or -1 if the JVM cannot tell
+    static long allocatedBytes() {
+        var bean = ManagementFactory.getThreadMXBean() ;
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1 ;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId()) ;
+    }
+
+    static long bytesPerObservation(Observation obs, Function<GameObject, LabEntity> convert, int rounds) {
+        for (int r = 0; r < rounds; r++)
+            for (var obj : obs.objects) convert.apply(obj) ;
+        long start = allocatedBytes() ;
+        for (int r = 0; r < rounds; r++)
+            for (var obj : obs.objects) convert.apply(obj) ;
+        return (allocatedBytes() - start) / rounds ;
+    }
+
+    @Test
+    public void benchmark_allocation() {
+        if (allocatedBytes() < 0) return ;
+        var obs = ObservationSamples.sample(100, 0) ;
+        int rounds = 2000 ;
+        long before = bytesPerObservation(obs, ObservationConversionTest::toWorldEntityWithBuilder, rounds) ;
+        long after = bytesPerObservation(obs, Observation::toWorldEntity, rounds) ;
+        System.out.println(String.format(">>> converting %d game objects: %d bytes allocated with the builder, %d now",
+                obs.objects.length, before, after)) ;
+        assertTrue(after < before) ;
+    }
+}
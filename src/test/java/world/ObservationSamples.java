@@ -0,0 +1,105 @@
+package world;
+
+import java.util.Random;
+
+import eu.iv4xr.framework.spatial.Vec3;
+import world.Observation.GameObject;
+
+/**
+ * Generates synthetic observations, shaped like those sent by Lab Recruits: a
+ * mix of decorations, doors, switches, color screens and fire hazards. Used by
+ * tests and timing-benchmarks that should run without the game.
+ */
+public class ObservationSamples {
+
+    static Vec3 vec(Random rnd) {
+        return new Vec3(rnd.nextInt(400) / 4f, rnd.nextInt(8) / 4f, rnd.nextInt(400) / 4f) ;
+    }
+
+    static GameObject.Color color(Random rnd) {
+        var c = new GameObject.Color() ;
+        c.r = rnd.nextInt(2) ;
+        c.g = rnd.nextInt(2) ;
+        c.b = rnd.nextInt(2) ;
+        return c ;
+    }
+
+    public static GameObject gameObject(int i, Random rnd) {
+        var obj = new GameObject() ;
+        obj.id = "" + (1000 + i) ;
+        obj.transform = new GameObject.Transform() ;
+        obj.transform.position = vec(rnd) ;
+        obj.transform.rotation = new Vec3(0, rnd.nextInt(4) * 90, 0) ;
+        obj.transform.velocity = Vec3.zero() ;
+        var collider = new GameObject.Collider() ;
+        collider.center = obj.transform.position.copy() ;
+        collider.size = new Vec3(1f, 2f, -0.2f) ;
+        obj.colliders = new GameObject.Collider[] { collider } ;
+        switch (i % 5) {
+        case 0:
+            obj.tag = "Door" ;
+            obj.name = "door" + i ;
+            obj.Toggleable = new GameObject.Toggleable() ;
+            obj.Toggleable.isActive = rnd.nextBoolean() ;
+            break ;
+        case 1:
+            obj.tag = "Switch" ;
+            obj.name = "button" + i ;
+            obj.Interactable = new GameObject.Interactable() ;
+            obj.Interactable.interactable = true ;
+            obj.Interactable.interactionCooldown = 0.5f ;
+            obj.Interactable.timeSinceInteraction = 0f ;
+            obj.Toggleable = new GameObject.Toggleable() ;
+            obj.Toggleable.isActive = rnd.nextBoolean() ;
+            if (rnd.nextBoolean()) {
+                obj.Colorized = new GameObject.Colorized() ;
+                obj.Colorized.color = color(rnd) ;
+            }
+            break ;
+        case 2:
+            obj.tag = "ColorScreen" ;
+            obj.name = "screen" + i ;
+            obj.ColorScreen = new GameObject.ColorScreen() ;
+            obj.ColorScreen.color = color(rnd) ;
+            break ;
+        case 3:
+            obj.tag = "Untagged" ;
+            obj.name = "FireHazard(Clone)" ;
+            obj.FireHazard = new GameObject.FireHazard() ;
+            break ;
+        default:
+            obj.tag = "Decoration" ;
+            obj.name = "ChairPrefab(Clone)" ;
+            obj.colliders = null ;
+        }
+        return obj ;
+    }
+
+    /**
+     * Generate an observation with the given number of game objects.
+     */
+    public static Observation sample(int numberOfObjects, long seed) {
+        var rnd = new Random(seed) ;
+        var obs = new Observation() ;
+        obs.agent = obs.new Agent() ;
+        obs.agent.id = "agent0" ;
+        obs.agent.position = new Vec3(1f, 0f, 2f) ;
+        obs.agent.velocity = Vec3.zero() ;
+        obs.agent.didNothing = false ;
+        obs.agent.health = 100 ;
+        obs.agent.score = 10 ;
+        obs.agent.mood = "Happy" ;
+        obs.meta = new Observation.Meta() ;
+        obs.meta.tick = 42 ;
+        obs.meta.time = "2021-03-01T12:00:00.000Z" ;
+        obs.objects = new GameObject[numberOfObjects] ;
+        for (int i = 0; i < numberOfObjects; i++) {
+            obs.objects[i] = gameObject(i, rnd) ;
+        }
+        obs.navMeshIndices = new int[numberOfObjects] ;
+        for (int i = 0; i < numberOfObjects; i++) {
+            obs.navMeshIndices[i] = 3 * i ;
+        }
+        return obs ;
+    }
+}
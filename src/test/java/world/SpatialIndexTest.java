@@ -0,0 +1,178 @@
+package world;
+
+import static org.junit.jupiter.api.Assertions.* ;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import eu.iv4xr.framework.spatial.Line;
+import eu.iv4xr.framework.spatial.Vec3;
+
+/**
+ * Checks the spatial queries of {@link LabWorldModel} against scanning all
+ * entities, and times both on a model with many entities.
+ */
+public class SpatialIndexTest {
+
+    static LabEntity entity(String id, String type, Vec3 position, Vec3 extent, long tick) {
+        var e = new LabEntity(id, type, Observation.isDynamicType(type)) ;
+        e.position = position ;
+        e.extent = extent ;
+        e.assignTimeStamp(tick) ;
+        if (type.equals(LabEntity.DOOR)) e.properties.put("isOpen", false) ;
+        if (type.equals(LabEntity.SWITCH)) e.properties.put("isOn", false) ;
+        return e ;
+    }
+
+    static Vec3 randomPoint(Random rnd, float size) {
+        return new Vec3(rnd.nextFloat() * size, rnd.nextInt(2) * 4f, rnd.nextFloat() * size) ;
+    }
+
+    static LabWorldModel model(int numberOfEntities, float size, long seed) {
+        var rnd = new Random(seed) ;
+        var obs = new LabWorldModel() ;
+        obs.timestamp = 1 ;
+        String[] types = { LabEntity.DOOR, LabEntity.SWITCH, LabEntity.COLORSCREEN, LabEntity.GOAL, "" } ;
+        for (int i = 0; i < numberOfEntities; i++) {
+            var extent = new Vec3(rnd.nextFloat(), rnd.nextFloat() + 0.1f, rnd.nextFloat()) ;
+            obs.elements.put("e" + i, entity("e" + i, types[i % types.length], randomPoint(rnd, size), extent, 1)) ;
+        }
+        var model = new LabWorldModel() ;
+        model.mergeNewObservation(obs) ;
+        return model ;
+    }
+
+    static Set<String> ids(List<LabEntity> entities) {
+        Set<String> ids = new TreeSet<>() ;
+        for (var e : entities) ids.add(e.id) ;
+        return ids ;
+    }
+
+    static Set<String> scanWithin(LabWorldModel model, Vec3 center, float radius) {
+        Set<String> ids = new TreeSet<>() ;
+        for (var e : model.elements.values())
+            if (Vec3.dist(e.position, center) <= radius) ids.add(e.id) ;
+        return ids ;
+    }
+
+    static Set<String> scanAlong(LabWorldModel model, Vec3 from, Vec3 to) {
+        Set<String> ids = new TreeSet<>() ;
+        for (var e : model.elements.values()) {
+            var box = ((LabEntity) e).collisionBox() ;
+            var half = Vec3.mul(box.width, 0.5f) ;
+            if (LabWorldModel.segmentCrossesBox(from, to, Vec3.sub(box.center, half), Vec3.add(box.center, half)))
+                ids.add(e.id) ;
+        }
+        return ids ;
+    }
+
+    // the obstacle check that blockingEntitiesAlong should agree with:
+    static Set<String> scanBlocking(LabWorldModel model, Vec3 from, Vec3 to) {
+        Set<String> ids = new TreeSet<>() ;
+        var line = new Line(from, to) ;
+        for (var e : model.elements.values())
+            if (model.isBlocking(e) && !((LabEntity) e).intersect(line).isEmpty())
+                ids.add(e.id) ;
+        return ids ;
+    }
+
+    @Test
+    public void test_queries_same_as_scan() {
+        var model = model(300, 40, 1) ;
+        var rnd = new Random(2) ;
+        // the collision boxes reach from an entity's center down; query a bit below
+        // the centers:
+        var below = new Vec3(0, -0.1f, 0) ;
+        for (int k = 0; k < 200; k++) {
+            Vec3 p = Vec3.add(randomPoint(rnd, 40), below) ;
+            Vec3 q = Vec3.add(randomPoint(rnd, 40), below) ;
+            float r = rnd.nextFloat() * 5 ;
+            assertEquals(scanWithin(model, p, r), ids(model.entitiesWithin(p, r))) ;
+            assertEquals(scanAlong(model, p, q), ids(model.entitiesAlong(p, q))) ;
+            assertEquals(scanBlocking(model, p, q), ids(model.blockingEntitiesAlong(p, q))) ;
+            // a short, axis-parallel step, as an agent makes:
+            Vec3 step = Vec3.add(p, new Vec3(0, 0, -1.5f)) ;
+            assertEquals(scanAlong(model, p, step), ids(model.entitiesAlong(p, step))) ;
+            assertEquals(scanBlocking(model, p, step), ids(model.blockingEntitiesAlong(p, step))) ;
+        }
+        var min = new Vec3(10, 0, 10) ;
+        var max = new Vec3(20, 1, 15) ;
+        Set<String> inBox = new TreeSet<>() ;
+        for (var e : model.elements.values()) {
+            if (e.position.x - e.extent.x <= max.x && e.position.x + e.extent.x >= min.x
+                    && e.position.y - e.extent.y <= max.y && e.position.y + e.extent.y >= min.y
+                    && e.position.z - e.extent.z <= max.z && e.position.z + e.extent.z >= min.z)
+                inBox.add(e.id) ;
+        }
+        assertFalse(inBox.isEmpty()) ;
+        assertEquals(inBox, ids(model.entitiesInBox(min, max))) ;
+    }
+
+    @Test
+    public void test_index_follows_merges() {
+        var model = new LabWorldModel() ;
+        var obs = new LabWorldModel() ;
+        obs.timestamp = 1 ;
+        obs.elements.put("door0", entity("door0", LabEntity.DOOR, new Vec3(5, 0, 5), new Vec3(0.5f), 1)) ;
+        model.mergeNewObservation(obs) ;
+        var from = new Vec3(5, -0.25f, 3) ;
+        var to = new Vec3(5, -0.25f, 7) ;
+        assertEquals(Set.of("door0"), ids(model.blockingEntitiesAlong(from, to))) ;
+        // the door moves (say), and another one comes into view:
+        obs = new LabWorldModel() ;
+        obs.timestamp = 2 ;
+        obs.elements.put("door0", entity("door0", LabEntity.DOOR, new Vec3(25, 0, 5), new Vec3(0.5f), 2)) ;
+        obs.elements.put("door1", entity("door1", LabEntity.DOOR, new Vec3(5, 0, 6), new Vec3(0.5f), 2)) ;
+        model.mergeNewObservation(obs) ;
+        assertEquals(Set.of("door1"), ids(model.blockingEntitiesAlong(from, to))) ;
+        assertEquals(Set.of("door0"), ids(model.entitiesWithin(new Vec3(25, 0, 5), 1))) ;
+        // an open door does not block:
+        model.getElement("door1").properties.put("isOpen", true) ;
+        assertTrue(model.blockingEntitiesAlong(from, to).isEmpty()) ;
+        assertEquals(Set.of("door1"), ids(model.entitiesAlong(from, to))) ;
+    }
+
+    @Test
+    public void test_blocking_same_as_obstacle_check() {
+        var model = new LabWorldModel() ;
+        var obs = new LabWorldModel() ;
+        obs.timestamp = 1 ;
+        obs.elements.put("door0", entity("door0", LabEntity.DOOR, new Vec3(5, 0, 5), new Vec3(0.5f), 1)) ;
+        obs.elements.put("goal0", entity("goal0", LabEntity.GOAL, new Vec3(5, 0, 8), new Vec3(0.5f), 1)) ;
+        model.mergeNewObservation(obs) ;
+        // a goal is blocking, but has no collision box:
+        var from = new Vec3(5, -0.25f, 3) ;
+        var to = new Vec3(5, -0.25f, 10) ;
+        assertEquals(Set.of("door0"), ids(model.blockingEntitiesAlong(from, to))) ;
+        assertEquals(scanBlocking(model, from, to), ids(model.blockingEntitiesAlong(from, to))) ;
+        // above the collision box of the door, though within its bounding box:
+        from = new Vec3(5, 0.25f, 3) ;
+        to = new Vec3(5, 0.25f, 7) ;
+        assertTrue(model.blockingEntitiesAlong(from, to).isEmpty()) ;
+        assertTrue(model.entitiesAlong(from, to).isEmpty()) ;
+        assertEquals(scanBlocking(model, from, to), ids(model.blockingEntitiesAlong(from, to))) ;
+    }
+
+    @Test
+    public void benchmark_queries() {
+        var model = model(2000, 200, 3) ;
+        var rnd = new Random(4) ;
+        List<Vec3> points = new ArrayList<>() ;
+        for (int k = 0; k < 2000; k++) points.add(randomPoint(rnd, 200)) ;
+        int found = 0 ;
+        long start = System.nanoTime() ;
+        for (var p : points) found += scanBlocking(model, p, Vec3.add(p, new Vec3(1, 0, 1))).size() ;
+        double tScan = (System.nanoTime() - start) / 1e3 / points.size() ;
+        start = System.nanoTime() ;
+        for (var p : points) found -= model.blockingEntitiesAlong(p, Vec3.add(p, new Vec3(1, 0, 1))).size() ;
+        double tIndex = (System.nanoTime() - start) / 1e3 / points.size() ;
+        assertEquals(0, found) ;
+        System.out.println(String.format(">>> blocking entities along a step, among %d entities: scan %.1f us, index %.1f us",
+                model.elements.size(), tScan, tIndex)) ;
+    }
+}